@@ -5,4 +5,5 @@ package com.kunminx.puremusic.data.api;
  */
 public class APIs {
     public final static String BASE_URL = "https://test.com/";
+    public final static String DOWNLOAD_DEMO_URL = "https://upload-images.jianshu.io/upload_images/57036-570ed96eb055ef17.png";
 }
@@ -1,20 +1,34 @@
 package com.kunminx.puremusic.data.api;
 
+import io.reactivex.Observable;
 import retrofit2.Call;
+import retrofit2.Response;
 import retrofit2.http.Field;
 import retrofit2.http.FormUrlEncoded;
 import retrofit2.http.POST;
 
 /**
  * Create by KunMinX at 2021/6/3
+ * <p>
+ * Calls are enqueued on OkHttp's dispatcher by the async RxJava2 call adapter,
+ * disposing the subscription cancels the call.
  */
 public interface AccountService {
 
     @POST("xxx/login")
     @FormUrlEncoded
-    Call<String> login(
+    Observable<Response<String>> login(
         @Field("username") String username,
         @Field("password") String password
     );
 
+    /**
+     * Exchanges an expired token for a new one. Runs synchronously on OkHttp's thread from the authenticator.
+     */
+    @POST("xxx/refresh")
+    @FormUrlEncoded
+    Call<String> refresh(
+        @Field("token") String token
+    );
+
 }
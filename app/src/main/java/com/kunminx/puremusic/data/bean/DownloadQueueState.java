@@ -0,0 +1,33 @@
+package com.kunminx.puremusic.data.bean;
+
+/**
+ * bean，原始数据，只读，
+ * Java 我们通过移除 setter
+ * kotlin 直接将字段设为 val 即可
+ */
+public class DownloadQueueState {
+    public final int queued;
+    public final int running;
+    public final long lastWaitMillis;
+    public final long oldestWaitMillis;
+
+    public DownloadQueueState() {
+        this.queued = 0;
+        this.running = 0;
+        this.lastWaitMillis = 0;
+        this.oldestWaitMillis = 0;
+    }
+
+    /**
+     * @param queued           transfers waiting for a free slot
+     * @param running          transfers in progress
+     * @param lastWaitMillis   time the most recently started transfer spent in the queue
+     * @param oldestWaitMillis time the oldest queued transfer has been waiting so far
+     */
+    public DownloadQueueState(int queued, int running, long lastWaitMillis, long oldestWaitMillis) {
+        this.queued = queued;
+        this.running = running;
+        this.lastWaitMillis = lastWaitMillis;
+        this.oldestWaitMillis = oldestWaitMillis;
+    }
+}
@@ -9,6 +9,7 @@ import com.kunminx.puremusic.R;
  */
 public class Const {
     public static final String COVER_PATH = Utils.getApp().getExternalFilesDir(Environment.DIRECTORY_PICTURES).getAbsolutePath();
+    public static final String DOWNLOAD_PATH = Utils.getApp().getExternalFilesDir(Environment.DIRECTORY_DOWNLOADS).getAbsolutePath();
     public static final String COLUMN_LINK = Utils.getApp().getString(R.string.article_navigation);
     public static final String PROJECT_LINK = Utils.getApp().getString(R.string.github_project);
 }
@@ -0,0 +1,425 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.puremusic.data.repository;
+
+import com.kunminx.puremusic.data.bean.TestAlbum;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Versioned binary snapshot of a {@link TestAlbum}, used in place of JSON on the cold start path.
+ * <p>
+ * Layout, all ints big-endian:
+ * <pre>
+ * header   magic, version, sha-256 of the body and then of the header fields below (32 bytes),
+ *          stringCount, musicCount, album row (albumId, title, summary, artist, coverPrefix, coverName)
+ * body     music rows, musicCount * (musicId, coverPrefix, coverName, url, title, artist)
+ *          string offsets, stringCount * int
+ *          strings, each one length-prefixed UTF-8
+ * </pre>
+ * Every row field is an index into the string table, or -1 for null.
+ * Cover urls are split at the last '/' so that the shared host/path prefix is stored once.
+ * Snapshots are written by a {@link Writer}, page by page.
+ * <p>
+ * Rows have a fixed width, so a mapped snapshot can materialize any music by index
+ * without decoding the others, see {@link #map(File, boolean)}.
+ */
+final class AlbumSnapshot {
+
+    static final int MAGIC = 0x504D4153;
+    static final int VERSION = 2;
+
+    private static final int DIGEST_SIZE = 32;
+    private static final int ROW_FIELDS = 6;
+    private static final int ROW_SIZE = ROW_FIELDS * 4;
+    private static final int OFFSET_DIGEST = 8;
+    private static final int OFFSET_STRING_COUNT = OFFSET_DIGEST + DIGEST_SIZE;
+    private static final int OFFSET_MUSIC_COUNT = OFFSET_STRING_COUNT + 4;
+    private static final int OFFSET_ALBUM_ROW = OFFSET_MUSIC_COUNT + 4;
+    private static final int HEADER_SIZE = OFFSET_ALBUM_ROW + ROW_SIZE;
+
+    private AlbumSnapshot() {
+    }
+
+    /**
+     * {@link #map(File, boolean)} without verification, for the cold start path.
+     */
+    static Mapped map(File file) throws IOException {
+        return map(file, false);
+    }
+
+    /**
+     * Maps a snapshot file read-only, music rows and their strings are decoded on first access
+     * through the returned album's list.
+     * <p>
+     * Only the header and the table sizes are checked up front. With verify, the snapshot is also checked
+     * against its digest and every row field and string offset is bounds-checked, which reads the whole file,
+     * so it is meant for freshly written or rebuilt files. Without it, each field is bounds-checked as it is read,
+     * and a corrupt one fails that read with an {@link IllegalStateException}.
+     *
+     * @throws IOException if the file is not a snapshot of the supported version, truncated,
+     *                     or with verify, corrupt
+     */
+    static Mapped map(File file, boolean verify) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not an album snapshot: " + file);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported album snapshot version " + buffer.getInt(4));
+            }
+            byte[] digest = new byte[DIGEST_SIZE];
+            for (int i = 0; i < DIGEST_SIZE; i++) digest[i] = buffer.get(OFFSET_DIGEST + i);
+
+            int stringCount = buffer.getInt(OFFSET_STRING_COUNT);
+            int musicCount = buffer.getInt(OFFSET_MUSIC_COUNT);
+            long expected = (long) HEADER_SIZE + (long) musicCount * ROW_SIZE + (long) stringCount * 4;
+            if (stringCount < 0 || musicCount < 0 || expected > buffer.capacity()) {
+                throw new IOException("Truncated album snapshot: " + file);
+            }
+            if (verify) {
+                MessageDigest md = newDigest();
+                ByteBuffer body = buffer.duplicate();
+                body.position(HEADER_SIZE);
+                md.update(body);
+                ByteBuffer fields = buffer.duplicate();
+                fields.position(OFFSET_STRING_COUNT).limit(HEADER_SIZE);
+                md.update(fields);
+                if (!Arrays.equals(digest, md.digest())) {
+                    throw new IOException("Corrupt album snapshot, digest mismatch: " + file);
+                }
+                validate(buffer, stringCount, musicCount, file);
+            }
+
+            Reader reader = new Reader(buffer, stringCount, musicCount);
+            int a = OFFSET_ALBUM_ROW;
+            TestAlbum album = new TestAlbum(reader.string(buffer.getInt(a)), reader.string(buffer.getInt(a + 4)),
+                reader.string(buffer.getInt(a + 8)), reader.artist(buffer.getInt(a + 12)),
+                reader.cover(buffer.getInt(a + 16), buffer.getInt(a + 20)), new LazyMusicList(reader));
+            return new Mapped(album, digest);
+        }
+    }
+
+    /**
+     * Checks up front that every row field points into the string table and every string lies inside the file,
+     * the checks the reader otherwise makes field by field.
+     */
+    private static void validate(ByteBuffer buffer, int stringCount, int musicCount, File file) throws IOException {
+        int rowsEnd = HEADER_SIZE + musicCount * ROW_SIZE;
+        for (int p = OFFSET_ALBUM_ROW; p < rowsEnd; p += 4) {
+            int field = buffer.getInt(p);
+            if (field < -1 || field >= stringCount) {
+                throw new IOException("Corrupt album snapshot, string index " + field + " out of range: " + file);
+            }
+        }
+        int stringsStart = rowsEnd + stringCount * 4;
+        for (int i = 0; i < stringCount; i++) {
+            int offset = buffer.getInt(rowsEnd + i * 4);
+            if (offset < stringsStart || offset > buffer.capacity() - 4) {
+                throw new IOException("Corrupt album snapshot, string offset " + offset + " out of range: " + file);
+            }
+            int length = buffer.getInt(offset);
+            if (length < 0 || length > buffer.capacity() - 4 - offset) {
+                throw new IOException("Corrupt album snapshot, string length " + length + " out of range: " + file);
+            }
+        }
+    }
+
+    static final class Mapped {
+        final TestAlbum album;
+        final byte[] digest;
+
+        Mapped(TestAlbum album, byte[] digest) {
+            this.album = album;
+            this.digest = digest;
+        }
+    }
+
+    private static final class Reader {
+        private final ByteBuffer mBuffer;
+        private final int mMusicCount;
+        private final int mOffsetsBase;
+        private final int mStringsStart;
+        private final String[] mStrings;
+        private final TestAlbum.TestArtist[] mArtists;
+
+        Reader(ByteBuffer buffer, int stringCount, int musicCount) {
+            mBuffer = buffer;
+            mMusicCount = musicCount;
+            mOffsetsBase = HEADER_SIZE + musicCount * ROW_SIZE;
+            mStringsStart = mOffsetsBase + stringCount * 4;
+            mStrings = new String[stringCount];
+            mArtists = new TestAlbum.TestArtist[stringCount];
+        }
+
+        synchronized String string(int index) {
+            if (index == -1) return null;
+            check(index >= 0 && index < mStrings.length, "string index", index);
+            String s = mStrings[index];
+            if (s == null) {
+                int offset = mBuffer.getInt(mOffsetsBase + index * 4);
+                check(offset >= mStringsStart && offset <= mBuffer.capacity() - 4, "string offset", offset);
+                int length = mBuffer.getInt(offset);
+                check(length >= 0 && length <= mBuffer.capacity() - 4 - offset, "string length", length);
+                byte[] bytes = new byte[length];
+                for (int i = 0; i < length; i++) bytes[i] = mBuffer.get(offset + 4 + i);
+                s = new String(bytes, StandardCharsets.UTF_8);
+                mStrings[index] = s;
+            }
+            return s;
+        }
+
+        synchronized TestAlbum.TestArtist artist(int index) {
+            if (index == -1) return null;
+            check(index >= 0 && index < mArtists.length, "string index", index);
+            TestAlbum.TestArtist artist = mArtists[index];
+            if (artist == null) {
+                artist = new TestAlbum.TestArtist(string(index));
+                mArtists[index] = artist;
+            }
+            return artist;
+        }
+
+        String cover(int prefix, int name) {
+            if (name == -1) return null;
+            return prefix == -1 ? string(name) : string(prefix) + string(name);
+        }
+
+        private static void check(boolean inRange, String what, int value) {
+            if (!inRange) {
+                throw new IllegalStateException("Corrupt album snapshot, " + what + " " + value + " out of range");
+            }
+        }
+
+        TestAlbum.TestMusic music(int index) {
+            int r = HEADER_SIZE + index * ROW_SIZE;
+            return new TestAlbum.TestMusic(string(mBuffer.getInt(r)),
+                cover(mBuffer.getInt(r + 4), mBuffer.getInt(r + 8)),
+                string(mBuffer.getInt(r + 12)), string(mBuffer.getInt(r + 16)), artist(mBuffer.getInt(r + 20)));
+        }
+    }
+
+    /**
+     * Read-only list over the mapped rows, each music is materialized once on first {@link #get(int)}.
+     */
+    private static final class LazyMusicList extends AbstractList<TestAlbum.TestMusic> implements RandomAccess {
+        private final Reader mReader;
+        private final TestAlbum.TestMusic[] mMusics;
+
+        LazyMusicList(Reader reader) {
+            mReader = reader;
+            mMusics = new TestAlbum.TestMusic[reader.mMusicCount];
+        }
+
+        @Override
+        public synchronized TestAlbum.TestMusic get(int index) {
+            TestAlbum.TestMusic music = mMusics[index];
+            if (music == null) {
+                music = mReader.music(index);
+                mMusics[index] = music;
+            }
+            return music;
+        }
+
+        @Override
+        public int size() {
+            return mMusics.length;
+        }
+    }
+
+    /**
+     * Streams a snapshot into a file page by page, so the album is never held in memory as a whole.
+     * Music rows go straight to the file, strings to a spill file that {@link #finish(TestAlbum)} appends
+     * behind the string offsets. Strings are deduplicated against the most recent ones only,
+     * which catches the shared cover prefixes and artist names while the writer's memory stays
+     * independent of the album size. The same musics always produce the same bytes.
+     */
+    static final class Writer {
+        private static final int RECENT_STRINGS = 256;
+
+        private final File mFile;
+        private final File mSpill;
+        private final MessageDigest mDigest = newDigest();
+        private final DataOutputStream mBody;
+        private final DataOutputStream mStrings;
+        private final Map<String, Integer> mRecent = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > RECENT_STRINGS;
+            }
+        };
+        private int mStringCount;
+        private int mMusicCount;
+
+        /**
+         * @param spill scratch file for the strings, deleted when the writer is finished or aborted
+         */
+        Writer(File file, File spill) throws IOException {
+            mFile = file;
+            mSpill = spill;
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                // Filled in by finish, once the counts and the album row are known
+                out.write(new byte[HEADER_SIZE]);
+                mStrings = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spill)));
+            } catch (IOException e) {
+                out.close();
+                throw e;
+            }
+            mBody = new DataOutputStream(new DigestOutputStream(new BufferedOutputStream(out), mDigest));
+        }
+
+        void addMusics(List<TestAlbum.TestMusic> musics) throws IOException {
+            for (TestAlbum.TestMusic music : musics) {
+                mBody.writeInt(indexOf(music.musicId));
+                mBody.writeInt(indexOf(coverPrefix(music.coverImg)));
+                mBody.writeInt(indexOf(coverName(music.coverImg)));
+                mBody.writeInt(indexOf(music.url));
+                mBody.writeInt(indexOf(music.title));
+                mBody.writeInt(indexOf(artistName(music.artist)));
+                mMusicCount++;
+            }
+        }
+
+        /**
+         * Completes the file with the album row of header, its musics are ignored, and syncs it.
+         *
+         * @return digest of the snapshot, as stored in its header
+         */
+        byte[] finish(TestAlbum header) throws IOException {
+            ByteBuffer fields = ByteBuffer.allocate(HEADER_SIZE - OFFSET_STRING_COUNT);
+            int[] albumRow = {
+                indexOf(header.albumId), indexOf(header.title), indexOf(header.summary),
+                indexOf(artistName(header.artist)), indexOf(coverPrefix(header.coverImg)),
+                indexOf(coverName(header.coverImg))
+            };
+            fields.putInt(mStringCount).putInt(mMusicCount);
+            for (int field : albumRow) fields.putInt(field);
+            mStrings.close();
+
+            int offset = HEADER_SIZE + mMusicCount * ROW_SIZE + mStringCount * 4;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mSpill)))) {
+                for (int i = 0; i < mStringCount; i++) {
+                    mBody.writeInt(offset);
+                    int length = in.readInt();
+                    if (in.skipBytes(length) != length) throw new EOFException("Truncated " + mSpill);
+                    offset += 4 + length;
+                }
+            }
+            try (InputStream in = new FileInputStream(mSpill)) {
+                byte[] chunk = new byte[8192];
+                for (int read; (read = in.read(chunk)) != -1; ) mBody.write(chunk, 0, read);
+            }
+            mBody.close();
+            deleteSpill();
+
+            mDigest.update(fields.array());
+            byte[] digest = mDigest.digest();
+            try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                raf.write(digest);
+                raf.write(fields.array());
+                raf.getFD().sync();
+            }
+            return digest;
+        }
+
+        /**
+         * Drops the file and the spill.
+         */
+        void abort() {
+            try {
+                mBody.close();
+            } catch (IOException ignored) {
+            }
+            try {
+                mStrings.close();
+            } catch (IOException ignored) {
+            }
+            deleteSpill();
+            //noinspection ResultOfMethodCallIgnored
+            mFile.delete();
+        }
+
+        private void deleteSpill() {
+            //noinspection ResultOfMethodCallIgnored
+            mSpill.delete();
+        }
+
+        private int indexOf(String s) throws IOException {
+            if (s == null) return -1;
+            Integer index = mRecent.get(s);
+            if (index == null) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                mStrings.writeInt(bytes.length);
+                mStrings.write(bytes);
+                index = mStringCount++;
+                mRecent.put(s, index);
+            }
+            return index;
+        }
+    }
+
+    private static String artistName(TestAlbum.TestArtist artist) {
+        return artist == null ? null : artist.name;
+    }
+
+    private static String coverPrefix(String url) {
+        if (url == null) return null;
+        int slash = url.lastIndexOf('/');
+        return slash < 0 ? null : url.substring(0, slash + 1);
+    }
+
+    private static String coverName(String url) {
+        if (url == null) return null;
+        return url.substring(url.lastIndexOf('/') + 1);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
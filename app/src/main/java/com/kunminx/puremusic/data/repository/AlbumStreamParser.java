@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.puremusic.data.repository;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.kunminx.puremusic.data.bean.TestAlbum;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental album decoder built on {@link JsonReader}.
+ * <p>
+ * Unlike a full Gson#fromJson, no object tree of the whole catalog is built up front:
+ * musics are decoded one by one with the shared {@link GsonProvider} adapters and handed out in fixed-size pages,
+ * so the first page can be rendered while the rest of the catalog is still being read.
+ * <p>
+ * Album header keys (albumId, title ...) are expected before "musics", as in free_music.json,
+ * header keys that appear after "musics" are only visible on the last page.
+ */
+class AlbumStreamParser {
+
+    interface PageCallback {
+        /**
+         * @param header album header with "musics" set to the current page only
+         * @param last   true for the final page of the album
+         */
+        void onPage(TestAlbum header, boolean last);
+    }
+
+    private final int mPageSize;
+
+    AlbumStreamParser(int pageSize) {
+        if (pageSize <= 0) throw new IllegalArgumentException("pageSize must be > 0");
+        mPageSize = pageSize;
+    }
+
+    void parse(Reader source, PageCallback callback) throws IOException {
+        String albumId = null, title = null, summary = null, coverImg = null;
+        TestAlbum.TestArtist artist = null;
+
+        try (JsonReader reader = new JsonReader(source)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "albumId":
+                        albumId = GsonProvider.nextString(reader);
+                        break;
+                    case "title":
+                        title = GsonProvider.nextString(reader);
+                        break;
+                    case "summary":
+                        summary = GsonProvider.nextString(reader);
+                        break;
+                    case "coverImg":
+                        coverImg = GsonProvider.nextString(reader);
+                        break;
+                    case "artist":
+                        artist = GsonProvider.ARTIST.read(reader);
+                        break;
+                    case "musics":
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                            break;
+                        }
+                        List<TestAlbum.TestMusic> page = new ArrayList<>(mPageSize);
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            page.add(GsonProvider.MUSIC.read(reader));
+                            if (page.size() == mPageSize) {
+                                callback.onPage(new TestAlbum(albumId, title, summary, artist, coverImg, page), false);
+                                page = new ArrayList<>(mPageSize);
+                            }
+                        }
+                        reader.endArray();
+                        if (!page.isEmpty()) {
+                            callback.onPage(new TestAlbum(albumId, title, summary, artist, coverImg, page), false);
+                        }
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+
+        // The terminal page is always sent, it carries any header keys read after "musics"
+        callback.onPage(new TestAlbum(albumId, title, summary, artist, coverImg, new ArrayList<>()), true);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.puremusic.data.repository;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.kunminx.architecture.data.config.utils.KeyValueProvider;
+import com.kunminx.puremusic.data.api.AccountService;
+import com.kunminx.puremusic.data.config.Configs;
+
+import java.io.IOException;
+
+import okhttp3.Authenticator;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.Route;
+
+/**
+ * Attaches the session token to every request and refreshes it once per expiry.
+ * <p>
+ * The token is read from {@link Configs} once and then served from memory. On a 401 the first request
+ * to see it refreshes the token while holding the lock; requests failing meanwhile, and requests about to
+ * be sent, wait on that lock and are then replayed with the new token, so an expired session costs
+ * one refresh round trip instead of one per request.
+ */
+final class AuthInterceptor implements Interceptor, Authenticator {
+
+    private static final String HEADER = "Authorization";
+    private static final String SCHEME = "Bearer ";
+
+    private final Object mLock = new Object();
+    private final AccountService mRefreshService;
+    private final Configs mConfigs = KeyValueProvider.get(Configs.class);
+    private boolean mLoaded;
+    private String mToken;
+
+    /**
+     * @param refreshService backed by a client without this interceptor, so the refresh can't recurse
+     */
+    AuthInterceptor(AccountService refreshService) {
+        mRefreshService = refreshService;
+    }
+
+    /**
+     * Takes over a token obtained by login, in memory and in {@link Configs}.
+     */
+    void setToken(String token) {
+        synchronized (mLock) {
+            mToken = token;
+            mLoaded = true;
+            mConfigs.token().set(token);
+        }
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        String token = currentToken();
+        if (TextUtils.isEmpty(token) || request.header(HEADER) != null) return chain.proceed(request);
+        return chain.proceed(withToken(request, token));
+    }
+
+    @Nullable
+    @Override
+    public Request authenticate(@Nullable Route route, @NonNull Response response) throws IOException {
+        String used = response.request().header(HEADER);
+        // Nothing to refresh without a token, and a replay that fails again is not retried
+        if (used == null || response.priorResponse() != null) return null;
+        synchronized (mLock) {
+            String token = currentToken();
+            // Someone else refreshed while this request was in flight, just replay it
+            if (!TextUtils.isEmpty(token) && !used.equals(SCHEME + token)) {
+                return withToken(response.request(), token);
+            }
+            if (TextUtils.isEmpty(token)) return null;
+            retrofit2.Response<String> refreshed = mRefreshService.refresh(token).execute();
+            if (!refreshed.isSuccessful() || TextUtils.isEmpty(refreshed.body())) {
+                // The session is gone, stop attaching a token the server rejects
+                if (refreshed.code() == 401 || refreshed.code() == 403) setToken("");
+                return null;
+            }
+            setToken(refreshed.body());
+            return withToken(response.request(), mToken);
+        }
+    }
+
+    private String currentToken() {
+        // Blocks while a refresh holds the lock, so no request leaves with a token known to be stale
+        synchronized (mLock) {
+            if (!mLoaded) {
+                mToken = mConfigs.token().get();
+                mLoaded = true;
+            }
+            return mToken;
+        }
+    }
+
+    private static Request withToken(Request request, String token) {
+        return request.newBuilder().header(HEADER, SCHEME + token).build();
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.puremusic.data.repository;
+
+import com.kunminx.puremusic.data.bean.TestAlbum;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Disk copy of the last good album, read back on cold start before the catalog is decoded from its source.
+ * <p>
+ * The album is stored as an {@link AlbumSnapshot}, which is memory-mapped on read,
+ * so only the rows the playlist actually binds get materialized.
+ * Writes are streamed into a temp file and renamed over the cache, so a process death halfway through
+ * never leaves a torn cache.
+ * The digest in the snapshot header tells whether a freshly decoded album actually changed.
+ * <p>
+ * The cold start read only checks the header, the full digest is verified off that path:
+ * on the temp file before it replaces the cache, and on the existing file the first time
+ * a freshly decoded album is compared with it, a file that fails is rewritten.
+ */
+class CatalogCache {
+
+    private final File mFile;
+    private byte[] mDigest;
+    private boolean mVerified;
+    private int mUpdates;
+    private long mNextUpdate;
+
+    CatalogCache(File dir, String name) {
+        mFile = new File(dir, name);
+    }
+
+    synchronized boolean exists() {
+        return mFile.isFile();
+    }
+
+    synchronized TestAlbum read() {
+        if (!mFile.isFile()) return null;
+        try {
+            AlbumSnapshot.Mapped mapped = AlbumSnapshot.map(mFile, false);
+            mDigest = mapped.digest;
+            return mapped.album;
+        } catch (IOException | RuntimeException e) {
+            // Anything unreadable is a miss, the album is decoded from its source and written anew
+            //noinspection ResultOfMethodCallIgnored
+            mFile.delete();
+            mDigest = null;
+            return null;
+        }
+    }
+
+    /**
+     * Starts streaming an album into the cache, see {@link Update}.
+     */
+    Update update() {
+        return new Update();
+    }
+
+    /**
+     * @return true if the album differs from the cached one and has been written
+     */
+    boolean writeIfChanged(TestAlbum album) {
+        try (Update update = update()) {
+            if (album.musics != null) update.addMusics(album.musics);
+            return update.commit(album);
+        }
+    }
+
+    /**
+     * @return path prefix for the temp files of a new update
+     */
+    private synchronized String newTempPath() throws IOException {
+        File dir = mFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) throw new IOException("Can't create " + dir);
+        // Leftovers of an update a process death cut short
+        if (mUpdates++ == 0 && dir != null) {
+            File[] stale = dir.listFiles((d, name) -> name.startsWith(mFile.getName() + ".") && name.endsWith(".tmp"));
+            //noinspection ResultOfMethodCallIgnored
+            if (stale != null) for (File file : stale) file.delete();
+        }
+        return mFile.getPath() + "." + mNextUpdate++;
+    }
+
+    private synchronized boolean replace(File tmp, byte[] digest) {
+        mUpdates--;
+        if ((mDigest == null || !mVerified) && mFile.isFile()) {
+            try {
+                mDigest = AlbumSnapshot.map(mFile, true).digest;
+            } catch (IOException | RuntimeException e) {
+                mDigest = null;
+            }
+            mVerified = true;
+        }
+        if (Arrays.equals(digest, mDigest)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return false;
+        }
+        try {
+            // What reached the disk is verified before it replaces the cache
+            AlbumSnapshot.map(tmp, true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return true;
+        }
+        if (tmp.renameTo(mFile)) mDigest = digest;
+        return true;
+    }
+
+    private synchronized void discard() {
+        mUpdates--;
+    }
+
+    /**
+     * One album streamed into the cache: musics are written to a temp file as they are added,
+     * so the album never has to be collected in memory first.
+     * {@link #commit(TestAlbum)} replaces the cached album if the new one differs, {@link #close()}
+     * drops an update that wasn't committed. An IO error drops the update too, the cache keeps its album.
+     */
+    final class Update implements Closeable {
+        private AlbumSnapshot.Writer mWriter;
+        private File mTmp;
+
+        private Update() {
+            try {
+                String path = newTempPath();
+                mTmp = new File(path + ".tmp");
+                mWriter = new AlbumSnapshot.Writer(mTmp, new File(path + ".strings.tmp"));
+            } catch (IOException e) {
+                e.printStackTrace();
+                if (mTmp != null) discard();
+            }
+        }
+
+        void addMusics(List<TestAlbum.TestMusic> musics) {
+            if (mWriter == null) return;
+            try {
+                mWriter.addMusics(musics);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * @param header album header, its musics are ignored, the added ones are written
+         * @return true if the album differs from the cached one, it has been written unless the update failed
+         */
+        boolean commit(TestAlbum header) {
+            if (mWriter == null) return true;
+            byte[] digest;
+            try {
+                digest = mWriter.finish(header);
+            } catch (IOException e) {
+                fail(e);
+                return true;
+            }
+            mWriter = null;
+            return replace(mTmp, digest);
+        }
+
+        private void fail(IOException e) {
+            e.printStackTrace();
+            close();
+        }
+
+        @Override
+        public void close() {
+            if (mWriter == null) return;
+            mWriter.abort();
+            mWriter = null;
+            discard();
+        }
+    }
+}
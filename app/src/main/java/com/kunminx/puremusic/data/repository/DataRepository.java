@@ -16,35 +16,41 @@
 
 package com.kunminx.puremusic.data.repository;
 
-import android.annotation.SuppressLint;
-
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import com.kunminx.architecture.data.response.DataResult;
 import com.kunminx.architecture.data.response.ResponseStatus;
 import com.kunminx.architecture.data.response.ResultSource;
 import com.kunminx.architecture.domain.request.AsyncTask;
 import com.kunminx.architecture.utils.Utils;
-import com.kunminx.puremusic.R;
+import com.kunminx.puremusic.BuildConfig;
 import com.kunminx.puremusic.data.api.APIs;
 import com.kunminx.puremusic.data.api.AccountService;
+import com.kunminx.puremusic.data.bean.DownloadState;
 import com.kunminx.puremusic.data.bean.LibraryInfo;
 import com.kunminx.puremusic.data.bean.TestAlbum;
 import com.kunminx.puremusic.data.bean.User;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import io.reactivex.Emitter;
 import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.exceptions.Exceptions;
+import okhttp3.Authenticator;
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.logging.HttpLoggingInterceptor;
-import retrofit2.Call;
-import retrofit2.Response;
 import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 /**
@@ -52,6 +58,12 @@ import retrofit2.converter.gson.GsonConverterFactory;
  */
 public class DataRepository {
 
+    private static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final String FREE_MUSIC_ASSET = "free_music.json";
+    private static final String LIBRARY_ASSET = "library.json";
+
     private static final DataRepository S_REQUEST_MANAGER = new DataRepository();
 
     private DataRepository() {
@@ -63,67 +75,223 @@ public class DataRepository {
 
     private final Retrofit retrofit;
 
+    private final AuthInterceptor mAuthInterceptor;
+
+    private final FileDownloader mFileDownloader;
+
+    private final DownloadScheduler mDownloadScheduler = new DownloadScheduler(this::downloadFile, 3);
+
+    private final CatalogCache mFreeMusicCache = new CatalogCache(
+        new File(Utils.getApp().getFilesDir(), "catalog"), "free_music.snapshot");
+
+    private final SingleFlight mSingleFlight = new SingleFlight();
+
     {
-        HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
-        logging.setLevel(HttpLoggingInterceptor.Level.BODY);
-        OkHttpClient client = new OkHttpClient.Builder()
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
             .connectTimeout(8, TimeUnit.SECONDS)
             .readTimeout(8, TimeUnit.SECONDS)
             .writeTimeout(8, TimeUnit.SECONDS)
-            .addInterceptor(logging)
+            .cache(new Cache(new File(Utils.getApp().getCacheDir(), "http"), HTTP_CACHE_SIZE))
+            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .addNetworkInterceptor(new RevalidateInterceptor());
+
+        // BODY buffers every response in memory, so it is for debug builds only, release builds don't log at all
+        if (BuildConfig.DEBUG) {
+            HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
+            logging.setLevel(HttpLoggingInterceptor.Level.BODY);
+            builder.addInterceptor(logging);
+        }
+
+        // The refresh call goes through a client without the auth interceptor, so an expired refresh can't recurse.
+        // Auth comes after logging, so the token never shows up in the log
+        OkHttpClient refreshClient = builder.build();
+        mAuthInterceptor = new AuthInterceptor(new Retrofit.Builder()
+            .baseUrl(APIs.BASE_URL)
+            .client(refreshClient)
+            .addConverterFactory(GsonConverterFactory.create(GsonProvider.get()))
+            .build()
+            .create(AccountService.class));
+
+        OkHttpClient client = builder
+            .addInterceptor(mAuthInterceptor)
+            .authenticator(mAuthInterceptor)
             .build();
         retrofit = new Retrofit.Builder()
             .baseUrl(APIs.BASE_URL)
             .client(client)
-            .addConverterFactory(GsonConverterFactory.create())
+            .addConverterFactory(GsonConverterFactory.create(GsonProvider.get()))
+            .addCallAdapterFactory(RxJava2CallAdapterFactory.createAsync())
             .build();
+
+        // Shares the connection pool and dispatcher, but never buffers bodies through the logging interceptor,
+        // never sends the session token to file hosts,
+        // and keeps large files out of the HTTP cache, partial files are resumed by FileDownloader itself
+        OkHttpClient.Builder downloadClient = client.newBuilder().readTimeout(30, TimeUnit.SECONDS).cache(null)
+            .authenticator(Authenticator.NONE);
+        downloadClient.interceptors().clear();
+        downloadClient.networkInterceptors().clear();
+        mFileDownloader = new FileDownloader(downloadClient.build());
     }
 
     //TODO Tip: Push data back to the domain layer via the "reactive framework",
     // Correspondingly, in Kotlin, use flow{ ... emit(...) }.flowOn(Dispatchers.xx)
 
+    /**
+     * Stale-while-revalidate: the last good album on disk is pushed back first, tagged {@link ResultSource#LOCAL_FILE},
+     * then the album is decoded from its source, and pushed back again only if it differs from the cached one.
+     */
     public Observable<DataResult<TestAlbum>> getFreeMusic() {
+        return mSingleFlight.share("free_music", () -> AsyncTask.doIO(emitter -> {
+            TestAlbum cached = mFreeMusicCache.read();
+            if (cached != null) {
+                emitter.onNext(new DataResult<>(cached, new ResponseStatus("", true, ResultSource.LOCAL_FILE)));
+            }
+            TestAlbum testAlbum;
+            try (Reader reader = openAsset(FREE_MUSIC_ASSET)) {
+                testAlbum = GsonProvider.get().fromJson(reader, TestAlbum.class);
+            } catch (IOException e) {
+                emitter.onNext(new DataResult<>(null,
+                    new ResponseStatus(e.getMessage(), false, ResultSource.LOCAL_FILE)));
+                emitter.onComplete();
+                return;
+            }
+            if (mFreeMusicCache.writeIfChanged(testAlbum) || cached == null) {
+                emitter.onNext(new DataResult<>(testAlbum, new ResponseStatus()));
+            }
+            emitter.onComplete();
+        }));
+    }
+
+    public boolean hasFreeMusicCache() {
+        return mFreeMusicCache.exists();
+    }
+
+    /**
+     * The album on disk only, mapped lazily, see {@link CatalogCache}. Completes without a value if there is none.
+     */
+    public Observable<DataResult<TestAlbum>> getFreeMusicCache() {
         return AsyncTask.doIO(emitter -> {
-            Gson gson = new Gson();
-            Type type = new TypeToken<TestAlbum>() {
-            }.getType();
-            TestAlbum testAlbum = gson.fromJson(Utils.getApp().getString(R.string.free_music_json), type);
-            emitter.onNext(new DataResult<>(testAlbum, new ResponseStatus()));
+            TestAlbum cached = mFreeMusicCache.read();
+            if (cached != null) {
+                emitter.onNext(new DataResult<>(cached, new ResponseStatus("", true, ResultSource.LOCAL_FILE)));
+            }
+            emitter.onComplete();
         });
     }
 
+    /**
+     * Streaming variant of {@link #getFreeMusic()}:
+     * the album is decoded incrementally and pushed back page by page,
+     * each emission carries the album header and only the musics of that page,
+     * so the first screen can be rendered before the whole catalog is decoded.
+     * Pages are streamed into the disk cache as they are decoded, once decoding finishes
+     * the complete album can be read back lazily through {@link #getFreeMusicCache()}.
+     * Pages are pushed back on the io thread as fast as they are parsed, compose with {@link AsyncTask#batchOnMain()}
+     * to hand them to the main thread a frame at a time instead of one looper message per page.
+     * Not single-flighted: a caller joining late would miss the pages SingleFlight doesn't replay.
+     *
+     * @param pageSize number of musics per emission
+     */
+    public Observable<DataResult<TestAlbum>> getFreeMusicPages(int pageSize) {
+        return AsyncTask.doInBackground(AsyncTask.io(), emitter -> emitFreeMusicPages(pageSize, emitter));
+    }
+
+    private void emitFreeMusicPages(int pageSize, Emitter<DataResult<TestAlbum>> emitter) {
+        AlbumStreamParser parser = new AlbumStreamParser(pageSize);
+        // Each page is written to the cache as it is parsed, no page is kept here once it has been pushed back
+        try (CatalogCache.Update update = mFreeMusicCache.update()) {
+            parser.parse(openAsset(FREE_MUSIC_ASSET),
+                (header, last) -> {
+                    if (!last) {
+                        update.addMusics(header.musics);
+                        emitter.onNext(new DataResult<>(header, new ResponseStatus()));
+                    } else {
+                        update.commit(header);
+                    }
+                });
+            emitter.onComplete();
+        } catch (IOException | IllegalStateException e) {
+            emitter.onNext(new DataResult<>(null,
+                new ResponseStatus(e.getMessage(), false, ResultSource.LOCAL_FILE)));
+            emitter.onComplete();
+        }
+    }
+
     public Observable<DataResult<List<LibraryInfo>>> getLibraryInfo() {
-        return AsyncTask.doIO(emitter -> {
-            Gson gson = new Gson();
-            Type type = new TypeToken<List<LibraryInfo>>() {
-            }.getType();
-            List<LibraryInfo> list = gson.fromJson(Utils.getApp().getString(R.string.library_json), type);
-            emitter.onNext(new DataResult<>(list, new ResponseStatus()));
-        });
+        return mSingleFlight.share("library_info", () -> AsyncTask.doIO(emitter -> {
+            try (Reader reader = openAsset(LIBRARY_ASSET)) {
+                List<LibraryInfo> list = GsonProvider.get().fromJson(reader, GsonProvider.LIBRARY_INFO_LIST);
+                emitter.onNext(new DataResult<>(list, new ResponseStatus()));
+            } catch (IOException e) {
+                emitter.onNext(new DataResult<>(null,
+                    new ResponseStatus(e.getMessage(), false, ResultSource.LOCAL_FILE)));
+            }
+            emitter.onComplete();
+        }));
     }
 
     /**
-     * TODO: Simulate download task:
+     * Streams a bundled asset, JsonReader buffers it, so a catalog is decoded as it is read instead of being loaded into one String first.
      */
-    @SuppressLint("CheckResult")
-    public Observable<Integer> downloadFile() {
-        return AsyncTask.doIO(emitter -> {
-            // Simulate "data read and write" in memory, pretending to be "file IO",
-
-            byte[] bytes = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20};
-            try (ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
-                 ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-                int b;
-                while ((b = bis.read()) != -1) {
-                    Thread.sleep(500);
-                    emitter.onNext(b);
+    private static Reader openAsset(String name) throws IOException {
+        return new InputStreamReader(Utils.getApp().getAssets().open(name), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Concurrent calls to getFreeMusic and getLibraryInfo share one in-flight request,
+     * the returned SingleFlight reports how many calls were launched and how many were deduplicated.
+     */
+    public SingleFlight getSingleFlight() {
+        return mSingleFlight;
+    }
+
+    /**
+     * Downloads url into target with parallel Range requests, see {@link FileDownloader}.
+     * Progress is conflated through a {@link ProgressConflater}: download threads only overwrite the latest counts,
+     * and a percentage is pushed back at most once per frame and only when it changes, the final 100 is always delivered.
+     * Disposing stops the transfer and keeps the partial file, the next call for the same target resumes it.
+     */
+    public Observable<DownloadState> downloadFile(String url, File target) {
+        return AsyncTask.doIO(source -> {
+            ObservableEmitter<DownloadState> emitter = source.serialize();
+            FileDownloader.Task task = mFileDownloader.newTask(url, target);
+            int[] lastProgress = {-1};
+            ProgressConflater conflater = new ProgressConflater((downloaded, total) -> {
+                int progress = total > 0 ? (int) Math.min(99, downloaded * 100 / total) : 0;
+                if (progress != lastProgress[0]) {
+                    lastProgress[0] = progress;
+                    emitter.onNext(new DownloadState(true, progress));
                 }
-            } catch (IOException | InterruptedException e) {
-                e.printStackTrace();
+            });
+            emitter.setCancellable(() -> {
+                task.cancel();
+                conflater.cancel();
+            });
+            try {
+                task.execute(conflater);
+                conflater.finish(() -> {
+                    emitter.onNext(new DownloadState(true, 100));
+                    emitter.onComplete();
+                });
+            } catch (IOException e) {
+                conflater.cancel();
+                if (!task.isCancelled()) emitter.tryOnError(e);
             }
         });
     }
 
+    public FileDownloader getFileDownloader() {
+        return mFileDownloader;
+    }
+
+    /**
+     * Bounded, prioritized queue in front of {@link #downloadFile(String, File)}, shared by every requester.
+     */
+    public DownloadScheduler getDownloadScheduler() {
+        return mDownloadScheduler;
+    }
+
     /**
      * TODO: Simulate network request for login
      *
@@ -131,22 +299,19 @@ public class DataRepository {
      */
     public Observable<DataResult<String>> login(User user) {
 
-        // Use retrofit or any library you prefer for network requests. Here's a simple example using retrofit,
-        // If you use RxJava, you can additionally depend on RxJavaCallAdapterFactory to simplify the code.
-        // Refer to online resources for further details, no elaboration here.
+        // The async call adapter enqueues the call on OkHttp's dispatcher instead of blocking an io thread,
+        // and cancels it, freeing the connection, when the subscription is disposed, e.g. by cancelLogin.
 
-        return AsyncTask.doIO(emitter -> {
-            Call<String> call = retrofit.create(AccountService.class).login(user.getName(), user.getPassword());
-            Response<String> response;
-            try {
-                response = call.execute();
-                ResponseStatus responseStatus = new ResponseStatus(
-                    String.valueOf(response.code()), response.isSuccessful(), ResultSource.NETWORK);
-                emitter.onNext(new DataResult<>(response.body(), responseStatus));
-            } catch (IOException e) {
-                emitter.onNext(new DataResult<>(null,
-                    new ResponseStatus(e.getMessage(), false, ResultSource.NETWORK)));
-            }
-        });
+        return retrofit.create(AccountService.class).login(user.getName(), user.getPassword())
+            .map(response -> {
+                if (response.isSuccessful() && response.body() != null) mAuthInterceptor.setToken(response.body());
+                return new DataResult<>(response.body(), new ResponseStatus(
+                    String.valueOf(response.code()), response.isSuccessful(), ResultSource.NETWORK));
+            })
+            .onErrorReturn(e -> {
+                if (!(e instanceof IOException)) throw Exceptions.propagate(e);
+                return new DataResult<>(null, new ResponseStatus(e.getMessage(), false, ResultSource.NETWORK));
+            })
+            .observeOn(AndroidSchedulers.mainThread());
     }
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.puremusic.data.repository;
+
+import android.os.SystemClock;
+
+import com.kunminx.puremusic.data.bean.DownloadQueueState;
+import com.kunminx.puremusic.data.bean.DownloadState;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.subjects.BehaviorSubject;
+
+/**
+ * Queue in front of {@link DataRepository#downloadFile(String, File)}.
+ * <p>
+ * At most maxConcurrent transfers run at once, the rest wait by {@link Priority} and then in arrival order.
+ * A request for a url and target already queued or running joins that transfer instead of starting another one,
+ * and may raise its priority while it is still queued.
+ * Every caller gets its own {@link Handle}, the transfer is cancelled once all of its handles are cancelled.
+ * A cancelled transfer fails its progress with a {@link CancellationException}, only a finished one completes.
+ */
+public class DownloadScheduler {
+
+    public enum Priority {
+        // Downloads the user asked for
+        USER_INITIATED,
+        // Notification covers, see DownloadUseCase
+        COVER_ART,
+        // Background prefetch, runs only when nothing else waits
+        PREFETCH
+    }
+
+    interface Transfer {
+        Observable<DownloadState> start(String url, File target);
+    }
+
+    private final Transfer mTransfer;
+    private final int mMaxConcurrent;
+    private final Map<String, Task> mTasks = new HashMap<>();
+    private final PriorityQueue<Task> mQueue = new PriorityQueue<>(11, (a, b) -> {
+        int byPriority = a.priority.compareTo(b.priority);
+        return byPriority != 0 ? byPriority : Long.compare(a.seq, b.seq);
+    });
+    private final BehaviorSubject<DownloadQueueState> mQueueState =
+        BehaviorSubject.createDefault(new DownloadQueueState());
+    private int mRunning;
+    private long mSeq;
+    private long mLastWait;
+
+    DownloadScheduler(Transfer transfer, int maxConcurrent) {
+        mTransfer = transfer;
+        mMaxConcurrent = maxConcurrent;
+    }
+
+    public synchronized Handle enqueue(String url, File target, Priority priority) {
+        String key = url + '\n' + target.getAbsolutePath();
+        Task task = mTasks.get(key);
+        if (task == null) {
+            task = new Task(key, url, target, priority, mSeq++);
+            mTasks.put(key, task);
+            mQueue.add(task);
+        } else if (task.running == null && priority.compareTo(task.priority) < 0) {
+            mQueue.remove(task);
+            task.priority = priority;
+            mQueue.add(task);
+        }
+        task.handles++;
+        drain();
+        publishState();
+        return new Handle(task);
+    }
+
+    /**
+     * Queue depth, running count and wait times, pushed back on every change of the queue.
+     */
+    public Observable<DownloadQueueState> queueState() {
+        return mQueueState.hide();
+    }
+
+    private void drain() {
+        while (mRunning < mMaxConcurrent && !mQueue.isEmpty()) {
+            Task task = mQueue.poll();
+            mRunning++;
+            mLastWait = SystemClock.elapsedRealtime() - task.enqueuedAt;
+            task.running = mTransfer.start(task.url, task.target).subscribe(
+                task.progress::onNext,
+                e -> finish(task, e),
+                () -> finish(task, null));
+        }
+    }
+
+    private void finish(Task task, Throwable error) {
+        synchronized (this) {
+            if (mTasks.get(task.key) != task) return;
+            mTasks.remove(task.key);
+            mRunning--;
+            drain();
+            publishState();
+        }
+        if (error != null) task.progress.onError(error);
+        else task.progress.onComplete();
+    }
+
+    private synchronized void release(Task task) {
+        if (--task.handles > 0 || mTasks.get(task.key) != task) return;
+        mTasks.remove(task.key);
+        if (task.running == null) {
+            mQueue.remove(task);
+        } else {
+            task.running.dispose();
+            mRunning--;
+        }
+        drain();
+        publishState();
+        task.progress.onError(new CancellationException("Download of " + task.url + " cancelled"));
+    }
+
+    private void publishState() {
+        long now = SystemClock.elapsedRealtime();
+        long oldest = 0;
+        for (Task task : mQueue) oldest = Math.max(oldest, now - task.enqueuedAt);
+        mQueueState.onNext(new DownloadQueueState(mQueue.size(), mRunning, mLastWait, oldest));
+    }
+
+    private static final class Task {
+        final String key;
+        final String url;
+        final File target;
+        final long seq;
+        final long enqueuedAt = SystemClock.elapsedRealtime();
+        final BehaviorSubject<DownloadState> progress = BehaviorSubject.create();
+        Priority priority;
+        Disposable running;
+        int handles;
+
+        Task(String key, String url, File target, Priority priority, long seq) {
+            this.key = key;
+            this.url = url;
+            this.target = target;
+            this.priority = priority;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * A caller's share of a transfer.
+     */
+    public final class Handle {
+        private final Task mTask;
+        private boolean mCancelled;
+
+        private Handle(Task task) {
+            mTask = task;
+        }
+
+        /**
+         * Progress of the transfer, the latest state is replayed to new subscribers.
+         * Completes when the transfer finishes, fails with a {@link CancellationException} when it is cancelled.
+         */
+        public Observable<DownloadState> progress() {
+            return mTask.progress.hide();
+        }
+
+        /**
+         * Releases this caller's share, the transfer itself stops once no handle is left.
+         */
+        public void cancel() {
+            synchronized (DownloadScheduler.this) {
+                if (mCancelled) return;
+                mCancelled = true;
+            }
+            release(mTask);
+        }
+    }
+}
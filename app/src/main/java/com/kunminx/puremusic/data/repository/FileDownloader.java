@@ -0,0 +1,443 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.puremusic.data.repository;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Chunked, resumable HTTP downloader.
+ * <p>
+ * The remote length is probed with a one-byte Range request. If the server honours ranges,
+ * the file is preallocated and split into up to {@link #MAX_SEGMENTS} segments fetched in parallel,
+ * each one writing at its own offset through a shared {@link FileChannel}.
+ * Segment progress is persisted next to the partial file, so a download interrupted by
+ * cancellation or process death resumes where it stopped, guarded by If-Range against a changed remote file.
+ * A segment answered with anything but 206 discards the partial file and its plan, and the download starts over once.
+ * Servers without range support fall back to a single sequential stream.
+ */
+public class FileDownloader {
+
+    static final long PERSIST_INTERVAL_MS = 200;
+    private static final int MAX_SEGMENTS = 4;
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String PART_SUFFIX = ".part";
+    private static final String META_SUFFIX = ".part.meta";
+
+    private final OkHttpClient mClient;
+    private final ExecutorService mExecutor;
+
+    public FileDownloader(OkHttpClient client) {
+        mClient = client;
+        AtomicInteger count = new AtomicInteger();
+        mExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "file-downloader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Task newTask(String url, File target) {
+        return new Task(url, target);
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called after every chunk written, possibly from several segment threads at once,
+         * so implementations must be cheap and must not block, see {@link ProgressConflater}.
+         *
+         * @param total remote length in bytes, or -1 if the server did not tell
+         */
+        void onProgress(long downloaded, long total);
+    }
+
+    public final class Task {
+        private final String mUrl;
+        private final File mTarget;
+        private final File mPart;
+        private final File mMeta;
+        private final List<Call> mCalls = new CopyOnWriteArrayList<>();
+        private volatile boolean mCancelled;
+
+        private Task(String url, File target) {
+            mUrl = url;
+            mTarget = target;
+            mPart = new File(target.getPath() + PART_SUFFIX);
+            mMeta = new File(target.getPath() + META_SUFFIX);
+        }
+
+        /**
+         * Stops the transfer and keeps the partial file, so a later task for the same target resumes it.
+         */
+        public void cancel() {
+            mCancelled = true;
+            abortCalls();
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Blocks until the file is completely downloaded to the target.
+         *
+         * @throws InterruptedIOException if the task was cancelled or the thread interrupted
+         */
+        public File execute(ProgressListener listener) throws IOException {
+            File dir = mTarget.getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            Plan plan = Plan.load(mMeta, mUrl);
+            if (plan == null || !mPart.isFile()) {
+                plan = probe();
+            }
+            try {
+                fetch(plan, listener);
+            } catch (RemoteChangedException e) {
+                // The partial file is gone already, probe the current remote file and start over once
+                mCalls.clear();
+                fetch(probe(), listener);
+            }
+            if (mTarget.exists() && !mTarget.delete()) {
+                throw new IOException("Cannot replace " + mTarget);
+            }
+            if (!mPart.renameTo(mTarget)) {
+                throw new IOException("Cannot rename " + mPart + " to " + mTarget);
+            }
+            //noinspection ResultOfMethodCallIgnored
+            mMeta.delete();
+            return mTarget;
+        }
+
+        private void fetch(Plan plan, ProgressListener listener) throws IOException {
+            if (plan.segments.isEmpty()) {
+                fetchSequential(plan, listener);
+            } else {
+                plan.save(mMeta);
+                fetchSegments(plan, listener);
+            }
+        }
+
+        private Plan probe() throws IOException {
+            Request request = new Request.Builder().url(mUrl).header("Range", "bytes=0-0").build();
+            try (Response response = newCall(request).execute()) {
+                if (response.code() == 206) {
+                    long total = parseTotal(response.header("Content-Range"));
+                    String validator = response.header("ETag");
+                    if (validator == null) validator = response.header("Last-Modified");
+                    if (total > 0) return Plan.split(mUrl, total, validator);
+                }
+                if (!response.isSuccessful()) {
+                    throw new IOException("HTTP " + response.code() + " for " + mUrl);
+                }
+                return new Plan(mUrl, -1, null, new ArrayList<>());
+            } finally {
+                checkCancelled();
+            }
+        }
+
+        private void fetchSegments(Plan plan, ProgressListener listener) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(mPart, "rw");
+                 FileChannel channel = raf.getChannel()) {
+                if (raf.length() != plan.total) raf.setLength(plan.total);
+
+                AtomicLong downloaded = new AtomicLong(plan.downloaded());
+                CountDownLatch latch = new CountDownLatch(plan.segments.size());
+                List<Future<?>> futures = new ArrayList<>();
+                for (Segment segment : plan.segments) {
+                    futures.add(mExecutor.submit(() -> {
+                        try {
+                            fetchSegment(plan, segment, channel, downloaded, listener);
+                            return null;
+                        } finally {
+                            latch.countDown();
+                        }
+                    }));
+                }
+
+                boolean finished = false;
+                try {
+                    while (!finished) {
+                        finished = latch.await(PERSIST_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                        if (!plan.stale) plan.save(mMeta);
+                        if (!finished && firstFailure(futures) != null) abortCalls();
+                    }
+                } catch (InterruptedException e) {
+                    cancel();
+                    awaitUninterruptibly(latch);
+                    Thread.currentThread().interrupt();
+                    if (!plan.stale) plan.save(mMeta);
+                    throw new InterruptedIOException("Download interrupted");
+                }
+
+                if (plan.stale) {
+                    discardPartial();
+                    checkCancelled();
+                    throw new RemoteChangedException(mUrl);
+                }
+                IOException failure = firstFailure(futures);
+                if (failure != null) {
+                    checkCancelled();
+                    throw failure;
+                }
+                channel.force(false);
+            }
+        }
+
+        private void fetchSegment(Plan plan, Segment segment, FileChannel channel, AtomicLong downloaded,
+                                  ProgressListener listener) throws IOException {
+            long from = segment.start + segment.done;
+            if (from > segment.end) return;
+            Request.Builder builder = new Request.Builder().url(mUrl)
+                .header("Range", "bytes=" + from + "-" + segment.end);
+            if (plan.validator != null) builder.header("If-Range", plan.validator);
+            try (Response response = newCall(builder.build()).execute()) {
+                if (response.code() != 206) {
+                    // Remote file changed or ranges no longer honoured, the plan must never be saved again
+                    plan.stale = true;
+                    throw new IOException("HTTP " + response.code() + " for range request of " + mUrl);
+                }
+                ResponseBody body = response.body();
+                if (body == null) throw new IOException("Empty body for " + mUrl);
+                try (InputStream is = body.byteStream()) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+                    long position = from;
+                    int len;
+                    while ((len = is.read(buffer)) != -1) {
+                        wrapper.clear();
+                        wrapper.limit(len);
+                        while (wrapper.hasRemaining()) {
+                            position += channel.write(wrapper, position);
+                        }
+                        segment.done += len;
+                        long sum = downloaded.addAndGet(len);
+                        if (listener != null) listener.onProgress(sum, plan.total);
+                    }
+                }
+            }
+        }
+
+        private void fetchSequential(Plan plan, ProgressListener listener) throws IOException {
+            //noinspection ResultOfMethodCallIgnored
+            mMeta.delete();
+            Request request = new Request.Builder().url(mUrl).build();
+            try (Response response = newCall(request).execute();
+                 FileOutputStream fos = new FileOutputStream(mPart);
+                 FileChannel channel = fos.getChannel()) {
+                ResponseBody body = response.body();
+                if (!response.isSuccessful() || body == null) {
+                    throw new IOException("HTTP " + response.code() + " for " + mUrl);
+                }
+                long total = body.contentLength();
+                long downloaded = 0;
+                try (InputStream is = body.byteStream()) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+                    int len;
+                    while ((len = is.read(buffer)) != -1) {
+                        wrapper.clear();
+                        wrapper.limit(len);
+                        while (wrapper.hasRemaining()) channel.write(wrapper);
+                        downloaded += len;
+                        if (listener != null) listener.onProgress(downloaded, total);
+                    }
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                checkCancelled();
+                throw e;
+            }
+        }
+
+        private void discardPartial() {
+            //noinspection ResultOfMethodCallIgnored
+            mMeta.delete();
+            //noinspection ResultOfMethodCallIgnored
+            mPart.delete();
+        }
+
+        /**
+         * Stops the calls in flight without cancelling the task, used when one segment failed.
+         */
+        private void abortCalls() {
+            for (Call call : mCalls) call.cancel();
+        }
+
+        private Call newCall(Request request) {
+            Call call = mClient.newCall(request);
+            mCalls.add(call);
+            if (mCancelled) call.cancel();
+            return call;
+        }
+
+        private void checkCancelled() throws InterruptedIOException {
+            if (mCancelled) throw new InterruptedIOException("Download cancelled");
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException ignored) {
+                // Segment threads hold the channel, keep waiting until they let go of it
+            }
+        }
+    }
+
+    private static IOException firstFailure(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            if (!future.isDone()) continue;
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new InterruptedIOException("Download interrupted");
+            }
+        }
+        return null;
+    }
+
+    private static long parseTotal(String contentRange) {
+        // bytes 0-0/12345
+        if (contentRange == null) return -1;
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0) return -1;
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class RemoteChangedException extends IOException {
+        RemoteChangedException(String url) {
+            super("Remote file changed or ranges not honoured for " + url);
+        }
+    }
+
+    private static final class Segment {
+        final long start;
+        final long end;
+        volatile long done;
+
+        Segment(long start, long end, long done) {
+            this.start = start;
+            this.end = end;
+            this.done = done;
+        }
+    }
+
+    private static final class Plan {
+        final String url;
+        final long total;
+        final String validator;
+        final List<Segment> segments;
+        volatile boolean stale;
+
+        Plan(String url, long total, String validator, List<Segment> segments) {
+            this.url = url;
+            this.total = total;
+            this.validator = validator;
+            this.segments = segments;
+        }
+
+        static Plan split(String url, long total, String validator) {
+            int count = (int) Math.max(1, Math.min(MAX_SEGMENTS, total / MIN_SEGMENT_SIZE));
+            long size = total / count;
+            List<Segment> segments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long start = i * size;
+                long end = i == count - 1 ? total - 1 : start + size - 1;
+                segments.add(new Segment(start, end, 0));
+            }
+            return new Plan(url, total, validator, segments);
+        }
+
+        long downloaded() {
+            long sum = 0;
+            for (Segment segment : segments) sum += segment.done;
+            return sum;
+        }
+
+        synchronized void save(File meta) throws IOException {
+            File tmp = new File(meta.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+                out.writeUTF(url);
+                out.writeLong(total);
+                out.writeUTF(validator == null ? "" : validator);
+                out.writeInt(segments.size());
+                for (Segment segment : segments) {
+                    out.writeLong(segment.start);
+                    out.writeLong(segment.end);
+                    out.writeLong(segment.done);
+                }
+            }
+            if (!tmp.renameTo(meta)) throw new IOException("Cannot write " + meta);
+        }
+
+        static Plan load(File meta, String url) {
+            if (!meta.isFile()) return null;
+            try (DataInputStream in = new DataInputStream(new FileInputStream(meta))) {
+                if (!url.equals(in.readUTF())) return null;
+                long total = in.readLong();
+                String validator = in.readUTF();
+                int count = in.readInt();
+                List<Segment> segments = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    segments.add(new Segment(in.readLong(), in.readLong(), in.readLong()));
+                }
+                return new Plan(url, total, validator.isEmpty() ? null : validator, segments);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
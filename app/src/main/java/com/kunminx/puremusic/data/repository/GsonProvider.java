@@ -0,0 +1,349 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.puremusic.data.repository;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.kunminx.puremusic.data.bean.DownloadQueueState;
+import com.kunminx.puremusic.data.bean.DownloadState;
+import com.kunminx.puremusic.data.bean.LibraryInfo;
+import com.kunminx.puremusic.data.bean.TestAlbum;
+import com.kunminx.puremusic.data.bean.User;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide Gson, shared by DataRepository and the Retrofit converter.
+ * <p>
+ * Every bean in data.bean gets a hand-written TypeAdapter,
+ * so decoding neither reflects over the bean classes nor builds a new Gson per request.
+ * TypeTokens used by the repository are resolved once here as well.
+ */
+public final class GsonProvider {
+
+    static final TypeAdapter<TestAlbum.TestArtist> ARTIST = new ArtistAdapter().nullSafe();
+    static final TypeAdapter<TestAlbum.TestMusic> MUSIC = new MusicAdapter().nullSafe();
+    static final TypeAdapter<TestAlbum> ALBUM = new AlbumAdapter().nullSafe();
+    static final TypeAdapter<LibraryInfo> LIBRARY_INFO = new LibraryInfoAdapter().nullSafe();
+    static final TypeAdapter<User> USER = new UserAdapter().nullSafe();
+    static final TypeAdapter<DownloadState> DOWNLOAD_STATE = new DownloadStateAdapter().nullSafe();
+    static final TypeAdapter<DownloadQueueState> DOWNLOAD_QUEUE_STATE = new DownloadQueueStateAdapter().nullSafe();
+
+    public static final Type LIBRARY_INFO_LIST = TypeToken.getParameterized(List.class, LibraryInfo.class).getType();
+
+    private static final Gson S_GSON = new GsonBuilder()
+        .registerTypeAdapter(TestAlbum.TestArtist.class, ARTIST)
+        .registerTypeAdapter(TestAlbum.TestMusic.class, MUSIC)
+        .registerTypeAdapter(TestAlbum.class, ALBUM)
+        .registerTypeAdapter(LibraryInfo.class, LIBRARY_INFO)
+        .registerTypeAdapter(User.class, USER)
+        .registerTypeAdapter(DownloadState.class, DOWNLOAD_STATE)
+        .registerTypeAdapter(DownloadQueueState.class, DOWNLOAD_QUEUE_STATE)
+        .disableHtmlEscaping()
+        .create();
+
+    private GsonProvider() {
+    }
+
+    public static Gson get() {
+        return S_GSON;
+    }
+
+    static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static final class ArtistAdapter extends TypeAdapter<TestAlbum.TestArtist> {
+        @Override
+        public void write(JsonWriter out, TestAlbum.TestArtist value) throws IOException {
+            out.beginObject();
+            out.name("name").value(value.name);
+            out.endObject();
+        }
+
+        @Override
+        public TestAlbum.TestArtist read(JsonReader in) throws IOException {
+            String name = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("name".equals(in.nextName())) name = nextString(in);
+                else in.skipValue();
+            }
+            in.endObject();
+            return new TestAlbum.TestArtist(name);
+        }
+    }
+
+    private static final class MusicAdapter extends TypeAdapter<TestAlbum.TestMusic> {
+        @Override
+        public void write(JsonWriter out, TestAlbum.TestMusic value) throws IOException {
+            out.beginObject();
+            out.name("musicId").value(value.musicId);
+            out.name("title").value(value.title);
+            out.name("artist");
+            ARTIST.write(out, value.artist);
+            out.name("coverImg").value(value.coverImg);
+            out.name("url").value(value.url);
+            out.endObject();
+        }
+
+        @Override
+        public TestAlbum.TestMusic read(JsonReader in) throws IOException {
+            String musicId = null, coverImg = null, url = null, title = null;
+            TestAlbum.TestArtist artist = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "musicId":
+                        musicId = nextString(in);
+                        break;
+                    case "coverImg":
+                        coverImg = nextString(in);
+                        break;
+                    case "url":
+                        url = nextString(in);
+                        break;
+                    case "title":
+                        title = nextString(in);
+                        break;
+                    case "artist":
+                        artist = ARTIST.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return new TestAlbum.TestMusic(musicId, coverImg, url, title, artist);
+        }
+    }
+
+    private static final class AlbumAdapter extends TypeAdapter<TestAlbum> {
+        @Override
+        public void write(JsonWriter out, TestAlbum value) throws IOException {
+            out.beginObject();
+            out.name("albumId").value(value.albumId);
+            out.name("title").value(value.title);
+            out.name("summary").value(value.summary);
+            out.name("artist");
+            ARTIST.write(out, value.artist);
+            out.name("coverImg").value(value.coverImg);
+            out.name("musics");
+            if (value.musics == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (TestAlbum.TestMusic music : value.musics) MUSIC.write(out, music);
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public TestAlbum read(JsonReader in) throws IOException {
+            String albumId = null, title = null, summary = null, coverImg = null;
+            TestAlbum.TestArtist artist = null;
+            List<TestAlbum.TestMusic> musics = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "albumId":
+                        albumId = nextString(in);
+                        break;
+                    case "title":
+                        title = nextString(in);
+                        break;
+                    case "summary":
+                        summary = nextString(in);
+                        break;
+                    case "coverImg":
+                        coverImg = nextString(in);
+                        break;
+                    case "artist":
+                        artist = ARTIST.read(in);
+                        break;
+                    case "musics":
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            break;
+                        }
+                        musics = new ArrayList<>();
+                        in.beginArray();
+                        while (in.hasNext()) musics.add(MUSIC.read(in));
+                        in.endArray();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return new TestAlbum(albumId, title, summary, artist, coverImg, musics);
+        }
+    }
+
+    private static final class LibraryInfoAdapter extends TypeAdapter<LibraryInfo> {
+        @Override
+        public void write(JsonWriter out, LibraryInfo value) throws IOException {
+            out.beginObject();
+            out.name("title").value(value.getTitle());
+            out.name("summary").value(value.getSummary());
+            out.name("url").value(value.getUrl());
+            out.endObject();
+        }
+
+        @Override
+        public LibraryInfo read(JsonReader in) throws IOException {
+            String title = null, summary = null, url = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "title":
+                        title = nextString(in);
+                        break;
+                    case "summary":
+                        summary = nextString(in);
+                        break;
+                    case "url":
+                        url = nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return new LibraryInfo(title, summary, url);
+        }
+    }
+
+    private static final class UserAdapter extends TypeAdapter<User> {
+        @Override
+        public void write(JsonWriter out, User value) throws IOException {
+            out.beginObject();
+            out.name("name").value(value.getName());
+            out.name("password").value(value.getPassword());
+            out.endObject();
+        }
+
+        @Override
+        public User read(JsonReader in) throws IOException {
+            String name = null, password = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "name":
+                        name = nextString(in);
+                        break;
+                    case "password":
+                        password = nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return new User(name, password);
+        }
+    }
+
+    private static final class DownloadStateAdapter extends TypeAdapter<DownloadState> {
+        @Override
+        public void write(JsonWriter out, DownloadState value) throws IOException {
+            out.beginObject();
+            out.name("isForgive").value(value.isForgive);
+            out.name("progress").value(value.progress);
+            out.endObject();
+        }
+
+        @Override
+        public DownloadState read(JsonReader in) throws IOException {
+            boolean isForgive = false;
+            int progress = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "isForgive":
+                        isForgive = in.nextBoolean();
+                        break;
+                    case "progress":
+                        progress = in.nextInt();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return new DownloadState(isForgive, progress);
+        }
+    }
+
+    private static final class DownloadQueueStateAdapter extends TypeAdapter<DownloadQueueState> {
+        @Override
+        public void write(JsonWriter out, DownloadQueueState value) throws IOException {
+            out.beginObject();
+            out.name("queued").value(value.queued);
+            out.name("running").value(value.running);
+            out.name("lastWaitMillis").value(value.lastWaitMillis);
+            out.name("oldestWaitMillis").value(value.oldestWaitMillis);
+            out.endObject();
+        }
+
+        @Override
+        public DownloadQueueState read(JsonReader in) throws IOException {
+            int queued = 0, running = 0;
+            long lastWaitMillis = 0, oldestWaitMillis = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "queued":
+                        queued = in.nextInt();
+                        break;
+                    case "running":
+                        running = in.nextInt();
+                        break;
+                    case "lastWaitMillis":
+                        lastWaitMillis = in.nextLong();
+                        break;
+                    case "oldestWaitMillis":
+                        oldestWaitMillis = in.nextLong();
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            return new DownloadQueueState(queued, running, lastWaitMillis, oldestWaitMillis);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.puremusic.data.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Conflating progress channel between download threads and the main thread.
+ * <p>
+ * Download threads only overwrite the latest byte counts held here, which allocates nothing per chunk;
+ * the main thread is handed the latest counts at most once per interval, intermediate updates are dropped.
+ * {@link #finish(Runnable)} always runs, after any pending delivery, so the final state is never lost.
+ */
+public class ProgressConflater implements FileDownloader.ProgressListener {
+
+    /**
+     * One frame at 60fps
+     */
+    public static final long FRAME_INTERVAL_MS = 16;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final FileDownloader.ProgressListener mReceiver;
+    private final long mIntervalMs;
+    private final AtomicLong mDownloaded = new AtomicLong();
+    private final AtomicLong mTotal = new AtomicLong(-1);
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    private final Runnable mDrain = this::drain;
+    private volatile long mLastDelivery;
+    private volatile boolean mClosed;
+
+    /**
+     * @param receiver called on the main thread with the latest counts
+     */
+    public ProgressConflater(long intervalMs, FileDownloader.ProgressListener receiver) {
+        mIntervalMs = intervalMs;
+        mReceiver = receiver;
+    }
+
+    public ProgressConflater(FileDownloader.ProgressListener receiver) {
+        this(FRAME_INTERVAL_MS, receiver);
+    }
+
+    @Override
+    public void onProgress(long downloaded, long total) {
+        // Segment threads race here, keep the counts monotonic
+        long current;
+        while ((current = mDownloaded.get()) < downloaded && !mDownloaded.compareAndSet(current, downloaded)) ;
+        mTotal.set(total);
+        if (!mClosed && mScheduled.compareAndSet(false, true)) {
+            long delay = Math.max(0, mLastDelivery + mIntervalMs - SystemClock.uptimeMillis());
+            mHandler.postDelayed(mDrain, delay);
+        }
+    }
+
+    private void drain() {
+        mScheduled.set(false);
+        if (mClosed) return;
+        mLastDelivery = SystemClock.uptimeMillis();
+        mReceiver.onProgress(mDownloaded.get(), mTotal.get());
+    }
+
+    /**
+     * Stops intermediate deliveries and runs onFinished on the main thread, after any delivery already under way.
+     */
+    public void finish(Runnable onFinished) {
+        mHandler.post(() -> {
+            mClosed = true;
+            mHandler.removeCallbacks(mDrain);
+            onFinished.run();
+        });
+    }
+
+    /**
+     * Drops any pending delivery without a final one.
+     */
+    public void cancel() {
+        mClosed = true;
+        mHandler.removeCallbacks(mDrain);
+    }
+}
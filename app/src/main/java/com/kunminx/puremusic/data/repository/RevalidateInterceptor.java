@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.puremusic.data.repository;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Network interceptor that turns validator-only GET responses into conditional revalidation.
+ * <p>
+ * A response carrying an ETag or Last-Modified but no Cache-Control / Expires would be served from the
+ * HTTP cache by heuristic freshness, possibly stale. Marking it no-cache keeps it in the cache, but makes
+ * OkHttp revalidate it with If-None-Match / If-Modified-Since every time, an unchanged body then costs
+ * a 304 without payload instead of the full response.
+ */
+final class RevalidateInterceptor implements Interceptor {
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        if (!"GET".equals(chain.request().method())
+            || response.header("Cache-Control") != null || response.header("Expires") != null) {
+            return response;
+        }
+        if (response.header("ETag") == null && response.header("Last-Modified") == null) {
+            return response;
+        }
+        return response.newBuilder()
+            .header("Cache-Control", "no-cache")
+            .build();
+    }
+}
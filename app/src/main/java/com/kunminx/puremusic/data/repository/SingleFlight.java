@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.puremusic.data.repository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Request coalescing for repository calls:
+ * while a call for a key is in flight, further callers for the same key join it
+ * instead of starting the same IO again, and all of them receive the same results.
+ * <p>
+ * Only the latest emission is replayed to a caller joining late, so memory stays bounded however long
+ * the stream is. That suits streams whose emissions supersede each other, e.g. a cached value and then
+ * a fresh one, not streams of increments such as pages.
+ * The key is forgotten as soon as the call terminates, or once all of its callers have disposed, which also
+ * disposes the call. A caller that joined before the call terminated gets its replayed result, even if it
+ * only subscribes afterwards, the call is never run twice for one launch.
+ */
+public class SingleFlight {
+
+    private final Map<String, Flight<?>> mInFlight = new HashMap<>();
+    private final AtomicLong mLaunched = new AtomicLong();
+    private final AtomicLong mDeduplicated = new AtomicLong();
+
+    interface Source<T> {
+        Observable<T> create();
+    }
+
+    <T> Observable<T> share(String key, Source<T> source) {
+        return Observable.defer(() -> {
+            Flight<T> flight;
+            synchronized (mInFlight) {
+                //noinspection unchecked
+                flight = (Flight<T>) mInFlight.get(key);
+                if (flight != null) {
+                    mDeduplicated.incrementAndGet();
+                } else {
+                    mLaunched.incrementAndGet();
+                    flight = launch(key, source);
+                    mInFlight.put(key, flight);
+                }
+                flight.callers++;
+            }
+            Flight<T> joined = flight;
+            return joined.shared.doFinally(() -> {
+                Disposable connection;
+                synchronized (mInFlight) {
+                    if (--joined.callers > 0) return;
+                    forget(key, joined);
+                    connection = joined.connection;
+                }
+                // Stops the call if it is still running, a no-op once it has terminated
+                if (connection != null) connection.dispose();
+            });
+        });
+    }
+
+    /**
+     * Connected once, by the first caller, and never reconnected: callers subscribing after the call
+     * terminated get the replay, new calls for the key start a new flight.
+     */
+    private <T> Flight<T> launch(String key, Source<T> source) {
+        Flight<T> flight = new Flight<>();
+        flight.shared = source.create()
+            .doOnTerminate(() -> {
+                synchronized (mInFlight) {
+                    forget(key, flight);
+                }
+            })
+            .replay(1)
+            .autoConnect(1, connection -> flight.connection = connection);
+        return flight;
+    }
+
+    // Guarded by mInFlight
+    private void forget(String key, Flight<?> flight) {
+        if (mInFlight.get(key) == flight) mInFlight.remove(key);
+    }
+
+    /**
+     * @return number of calls that actually started IO
+     */
+    public long getLaunchedCount() {
+        return mLaunched.get();
+    }
+
+    /**
+     * @return number of calls that joined an in-flight call instead of starting their own
+     */
+    public long getDeduplicatedCount() {
+        return mDeduplicated.get();
+    }
+
+    private static final class Flight<T> {
+        Observable<T> shared;
+        volatile Disposable connection;
+        // Guarded by mInFlight
+        int callers;
+    }
+}
@@ -2,6 +2,8 @@ package com.kunminx.puremusic.domain.event;
 
 import com.kunminx.puremusic.data.bean.DownloadState;
 
+import java.io.File;
+
 /**
  * Create by KunMinX at 2022/7/4
  */
@@ -10,19 +12,25 @@ public class DownloadEvent {
     public final static int EVENT_DOWNLOAD_GLOBAL = 2;
 
     public final int eventId;
+    public final String url;
+    public final File file;
     public final DownloadState downloadState;
 
-    public DownloadEvent(int eventId) {
+    public DownloadEvent(int eventId, String url, File file) {
         this.eventId = eventId;
+        this.url = url;
+        this.file = file;
         this.downloadState = new DownloadState();
     }
 
-    public DownloadEvent(int eventId, DownloadState downloadState) {
+    public DownloadEvent(int eventId, String url, File file, DownloadState downloadState) {
         this.eventId = eventId;
+        this.url = url;
+        this.file = file;
         this.downloadState = downloadState;
     }
 
     public DownloadEvent copy(DownloadState downloadState) {
-        return new DownloadEvent(this.eventId, downloadState);
+        return new DownloadEvent(this.eventId, this.url, this.file, downloadState);
     }
 }
@@ -85,8 +85,6 @@ public class AccountRequester extends Requester implements DefaultLifecycleObser
     // when the page is about to exit and the login request is not yet completed due to network delay,
     // the data layer is notified to cancel the request, avoiding unnecessary resource consumption and issues.
 
-    private Disposable mDisposable;
-
     //TODO Tip 6: As a producer of data, the requester's responsibility should be limited to "request scheduling and result distribution".
     // In other words, this class should only focus on data generation and feedback, not on data usage.
     // UI state changes should be handled at the presentation layer (e.g., with Jetpack Compose).
@@ -95,7 +93,7 @@ public class AccountRequester extends Requester implements DefaultLifecycleObser
         DataRepository.getInstance().login(user).subscribe(new Observer<DataResult<String>>() {
             @Override
             public void onSubscribe(Disposable d) {
-                mDisposable = d;
+                addDisposable(d);
             }
             @Override
             public void onNext(DataResult<String> dataResult) {
@@ -108,16 +106,12 @@ public class AccountRequester extends Requester implements DefaultLifecycleObser
             }
             @Override
             public void onComplete() {
-                mDisposable = null;
             }
         });
     }
 
     public void cancelLogin() {
-        if (mDisposable != null && !mDisposable.isDisposed()) {
-            mDisposable.dispose();
-            mDisposable = null;
-        }
+        clearDisposables();
     }
 
     //TODO Tip 7: Allow accountRequest to observe page lifecycle,
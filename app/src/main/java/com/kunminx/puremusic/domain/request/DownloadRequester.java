@@ -4,11 +4,20 @@ import androidx.annotation.NonNull;
 import androidx.lifecycle.LifecycleOwner;
 
 import com.kunminx.architecture.domain.dispatch.MviDispatcher;
+import com.kunminx.architecture.domain.message.MutableResult;
+import com.kunminx.architecture.domain.message.Result;
 import com.kunminx.architecture.domain.request.AsyncTask;
+import com.kunminx.architecture.domain.request.DisposableRegistry;
+import com.kunminx.puremusic.data.bean.DownloadQueueState;
 import com.kunminx.puremusic.data.bean.DownloadState;
 import com.kunminx.puremusic.data.repository.DataRepository;
+import com.kunminx.puremusic.data.repository.DownloadScheduler;
 import com.kunminx.puremusic.domain.event.DownloadEvent;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
 import io.reactivex.disposables.Disposable;
 
 /**
@@ -40,7 +49,24 @@ import io.reactivex.disposables.Disposable;
  */
 public class DownloadRequester extends MviDispatcher<DownloadEvent> {
 
-    private Disposable mDisposable;
+    // Handles of the downloads started here and their progress subscriptions, page-bound ones are cancelled
+    // when the page stops, global ones when this requester is cleared
+
+    private final Map<DownloadScheduler.Handle, Disposable> mLifecycleDownloads = new HashMap<>();
+
+    private final Map<DownloadScheduler.Handle, Disposable> mGlobalDownloads = new HashMap<>();
+
+    private final MutableResult<DownloadQueueState> mQueueStateResult = new MutableResult<>();
+
+    //TODO tip: MviDispatcher can't extend Requester, so it holds a DisposableRegistry of its own,
+    // every progress and queue subscription is registered here and disposed in onCleared.
+
+    private final DisposableRegistry mDisposables = new DisposableRegistry();
+
+    {
+        mDisposables.add(DataRepository.getInstance()
+            .getDownloadScheduler().queueState().subscribe(mQueueStateResult::postValue));
+    }
 
     //TODO Tip 2: Based on the "Single Responsibility Principle", Jetpack's ViewModel framework should be divided into state-ViewModel and result-ViewModel.
     // result-ViewModel serves as a domain layer component, inheriting only the "scope management" ability from the Jetpack ViewModel framework,
@@ -55,35 +81,78 @@ public class DownloadRequester extends MviDispatcher<DownloadEvent> {
 
     @Override
     protected void onHandle(DownloadEvent event) {
-        DataRepository repo = DataRepository.getInstance();
+        DownloadScheduler scheduler = DataRepository.getInstance().getDownloadScheduler();
+        DownloadScheduler.Handle handle = scheduler.enqueue(event.url, event.file,
+            DownloadScheduler.Priority.USER_INITIATED);
+        Map<DownloadScheduler.Handle, Disposable> downloads;
         switch (event.eventId) {
             case DownloadEvent.EVENT_DOWNLOAD:
-                repo.downloadFile().subscribe(new AsyncTask.Observer<Integer>() {
-                    @Override
-                    public void onSubscribe(Disposable d) {
-                        mDisposable = d;
-                    }
-                    @Override
-                    public void onNext(Integer integer) {
-                        sendResult(event.copy(new DownloadState(true, integer)));
-                    }
-                });
+                downloads = mLifecycleDownloads;
                 break;
             case DownloadEvent.EVENT_DOWNLOAD_GLOBAL:
-                repo.downloadFile().subscribe((AsyncTask.Observer<Integer>) integer -> {
-                    sendResult(event.copy(new DownloadState(true, integer)));
-                });
+                downloads = mGlobalDownloads;
                 break;
+            default:
+                handle.cancel();
+                return;
+        }
+        handle.progress().subscribe(new AsyncTask.Observer<DownloadState>() {
+            private Disposable mDisposable;
+            @Override
+            public void onSubscribe(Disposable d) {
+                mDisposable = mDisposables.add(d);
+                downloads.put(handle, d);
+            }
+            @Override
+            public void onNext(DownloadState state) {
+                sendResult(event.copy(state));
+            }
+            @Override
+            public void onError(Throwable e) {
+                mDisposables.remove(mDisposable);
+                downloads.remove(handle);
+                // Failed, or cancelled with a CancellationException: the file is incomplete either way,
+                // so the progress is reset and the download can be started again
+                sendResult(event.copy(new DownloadState()));
+            }
+            @Override
+            public void onComplete() {
+                mDisposables.remove(mDisposable);
+                downloads.remove(handle);
+            }
+        });
+    }
+
+    /**
+     * Queue depth and wait times of the shared download queue.
+     */
+    public Result<DownloadQueueState> getQueueStateResult() {
+        return mQueueStateResult;
+    }
+
+    /**
+     * Detaches from each download and releases its handle, a transfer shared with another caller keeps running.
+     */
+    private void cancelDownloads(Map<DownloadScheduler.Handle, Disposable> downloads) {
+        for (Map.Entry<DownloadScheduler.Handle, Disposable> download : new ArrayList<>(downloads.entrySet())) {
+            mDisposables.remove(download.getValue());
+            download.getValue().dispose();
+            download.getKey().cancel();
         }
+        downloads.clear();
     }
 
     @Override
     public void onStop(@NonNull LifecycleOwner owner) {
         super.onStop(owner);
-        if (mDisposable != null && !mDisposable.isDisposed()) {
-            mDisposable.dispose();
-            mDisposable = null;
-        }
+        cancelDownloads(mLifecycleDownloads);
     }
-}
 
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        cancelDownloads(mLifecycleDownloads);
+        cancelDownloads(mGlobalDownloads);
+        mDisposables.clear();
+    }
+}
@@ -16,8 +16,6 @@
 
 package com.kunminx.puremusic.domain.request;
 
-import android.annotation.SuppressLint;
-
 import com.kunminx.architecture.data.response.DataResult;
 import com.kunminx.architecture.domain.message.MutableResult;
 import com.kunminx.architecture.domain.message.Result;
@@ -87,10 +85,9 @@ public class InfoRequester extends Requester {
     // In other words, it should focus solely on data generation and pushback, not on data usage.
     // Logic for changing the UI state should only be written in the presentation layer, such as with Jetpack Compose.
 
-    @SuppressLint("CheckResult")
     public void requestLibraryInfo() {
         if (mLibraryResult.getValue() == null)
-            DataRepository.getInstance().getLibraryInfo().subscribe(mLibraryResult::setValue);
+            addDisposable(DataRepository.getInstance().getLibraryInfo().subscribe(mLibraryResult::setValue));
     }
 }
 
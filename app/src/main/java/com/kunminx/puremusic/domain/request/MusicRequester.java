@@ -16,15 +16,21 @@
 
 package com.kunminx.puremusic.domain.request;
 
-import android.annotation.SuppressLint;
-
 import com.kunminx.architecture.data.response.DataResult;
 import com.kunminx.architecture.domain.message.MutableResult;
 import com.kunminx.architecture.domain.message.Result;
+import com.kunminx.architecture.domain.request.AsyncTask;
 import com.kunminx.architecture.domain.request.Requester;
 import com.kunminx.puremusic.data.bean.TestAlbum;
 import com.kunminx.puremusic.data.repository.DataRepository;
 
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import io.reactivex.disposables.Disposable;
+
 /**
  * Music Resource Request
  * <p>
@@ -69,8 +75,15 @@ import com.kunminx.puremusic.data.repository.DataRepository;
  */
 public class MusicRequester extends Requester {
 
+    private static final int PAGE_SIZE = 50;
+
+    // The first screens, what the list shows while the rest of the album is still being decoded
+    private static final int PREVIEW_SIZE = 4 * PAGE_SIZE;
+
     private final MutableResult<DataResult<TestAlbum>> mFreeMusicsResult = new MutableResult<>();
 
+    private final MutableResult<List<TestAlbum.TestMusic>> mFreeMusicPagesResult = new MutableResult<>();
+
     //TODO tip 4: Follow "Reactive Programming" principles and implement "Unidirectional Data Flow"
     // MutableResult should only be used internally in the "Authentication Center," exposing immutable Result
     // to the UI layer. This enforces "read-write separation," ensuring that data flows from the domain layer
@@ -83,14 +96,117 @@ public class MusicRequester extends Requester {
         return mFreeMusicsResult;
     }
 
+    /**
+     * The first four pages decoded, pushed back while the album is still being decoded.
+     * The complete album is read back from the disk cache and pushed back through {@link #getFreeMusicsResult()}
+     * at the end, so no more than the preview is held here however large the catalog is.
+     * Each push is a new immutable list sharing the pages of the previous one, no music is copied per page.
+     */
+    public Result<List<TestAlbum.TestMusic>> getFreeMusicPagesResult() {
+        return mFreeMusicPagesResult;
+    }
+
     //TODO tip 5: The requester's role is solely for "request dispatching and result distribution"
     //
     // In other words, here we focus on data generation and forwarding, not its usage.
     // Logic to change UI state should only be written in the view layer (e.g., with Jetpack Compose).
 
-    @SuppressLint("CheckResult")
     public void requestFreeMusics() {
-        DataRepository.getInstance().getFreeMusic().subscribe(mFreeMusicsResult::setValue);
+
+        //TODO tip 6: With a disk copy in place, the cached album is painted at once and refreshed in the background,
+        // the page-by-page stream is only needed on the very first start.
+
+        DataRepository repo = DataRepository.getInstance();
+        if (repo.hasFreeMusicCache()) {
+            addDisposable(repo.getFreeMusic().subscribe(mFreeMusicsResult::setValue));
+            return;
+        }
+
+        //TODO tip 7: The parser outruns the main thread, batchOnMain collects the pages parsed within a frame,
+        // so the list is pushed back once per frame rather than once per page.
+
+        repo.getFreeMusicPages(PAGE_SIZE).compose(AsyncTask.batchOnMain())
+            .subscribe(new AsyncTask.Observer<List<DataResult<TestAlbum>>>() {
+            private TestAlbum mHeader;
+            private Pages<TestAlbum.TestMusic> mLoaded = new Pages<>();
+            private Disposable mDisposable;
+
+            @Override
+            public void onSubscribe(Disposable d) {
+                mDisposable = addDisposable(d);
+            }
+
+            @Override
+            public void onNext(List<DataResult<TestAlbum>> batch) {
+                Pages<TestAlbum.TestMusic> loaded = mLoaded;
+                for (DataResult<TestAlbum> dataResult : batch) {
+                    if (!dataResult.getResponseStatus().isSuccess()) {
+                        mHeader = null;
+                        mFreeMusicsResult.setValue(dataResult);
+                        return;
+                    }
+                    mHeader = dataResult.getResult();
+                    if (mLoaded.size() < PREVIEW_SIZE) mLoaded = mLoaded.plus(mHeader.musics);
+                }
+                if (mLoaded != loaded) mFreeMusicPagesResult.setValue(mLoaded);
+            }
+
+            @Override
+            public void onComplete() {
+                removeDisposable(mDisposable);
+                if (mHeader == null) return;
+                // The pages were streamed into the disk cache, the complete album is mapped from there,
+                // it is decoded once more only if the cache couldn't be written
+                addDisposable(repo.getFreeMusicCache().switchIfEmpty(repo.getFreeMusic())
+                    .subscribe(mFreeMusicsResult::setValue));
+            }
+        });
+    }
+
+    /**
+     * Immutable list over the pages decoded so far. Appending a page copies only the page references,
+     * the musics stay in the page lists the parser created, which are never modified afterwards.
+     */
+    private static final class Pages<T> extends AbstractList<T> implements RandomAccess {
+        private final List<T>[] mPages;
+        // Exclusive end index of each page in the whole list
+        private final int[] mEnds;
+
+        @SuppressWarnings("unchecked")
+        Pages() {
+            this(new List[0], new int[0]);
+        }
+
+        private Pages(List<T>[] pages, int[] ends) {
+            mPages = pages;
+            mEnds = ends;
+        }
+
+        Pages<T> plus(List<T> page) {
+            if (page.isEmpty()) return this;
+            int count = mPages.length;
+            List<T>[] pages = Arrays.copyOf(mPages, count + 1);
+            int[] ends = Arrays.copyOf(mEnds, count + 1);
+            pages[count] = page;
+            ends[count] = size() + page.size();
+            return new Pages<>(pages, ends);
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+            }
+            // Ends are strictly increasing, the page holding index is the first one ending after it
+            int found = Arrays.binarySearch(mEnds, index);
+            int page = found >= 0 ? found + 1 : -found - 1;
+            return mPages[page].get(page == 0 ? index : index - mEnds[page - 1]);
+        }
+
+        @Override
+        public int size() {
+            return mEnds.length == 0 ? 0 : mEnds[mEnds.length - 1];
+        }
     }
 }
 
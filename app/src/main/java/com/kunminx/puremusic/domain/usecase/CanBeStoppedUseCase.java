@@ -16,16 +16,21 @@
 
 package com.kunminx.puremusic.domain.usecase;
 
-import androidx.annotation.NonNull;
-import androidx.lifecycle.DefaultLifecycleObserver;
-import androidx.lifecycle.LifecycleOwner;
-
 import com.kunminx.architecture.data.response.DataResult;
+import com.kunminx.architecture.data.response.ResultSource;
 import com.kunminx.architecture.domain.usecase.UseCase;
+import com.kunminx.architecture.domain.usecase.UseCaseException;
+import com.kunminx.architecture.domain.usecase.UseCaseTask;
 import com.kunminx.puremusic.data.bean.DownloadState;
+import com.kunminx.puremusic.data.repository.DataRepository;
+import com.kunminx.puremusic.data.repository.DownloadScheduler;
+
+import java.io.File;
+
+import io.reactivex.disposables.Disposable;
 
 /**
- * UseCase Example, implements the LifeCycle interface, dedicated to services with "stop" requirements.
+ * UseCase Example, dedicated to services with "stop" requirements.
  * <p>
  * TODO tip:
  * Instead of writing two methods separately in the data layer for "download,"
@@ -42,13 +47,11 @@ import com.kunminx.puremusic.data.bean.DownloadState;
  * <p>
  * Created by KunMinX at 19/11/25
  */
-@Deprecated
 public class CanBeStoppedUseCase extends UseCase<CanBeStoppedUseCase.RequestValues,
-    CanBeStoppedUseCase.ResponseValue> implements DefaultLifecycleObserver {
-
-//    private final DownloadState downloadState = new DownloadState();
+    CanBeStoppedUseCase.ResponseValue> {
 
-    //TODO tip: Make CanBeStoppedUseCase observe the page lifecycle.
+    //TODO tip: Bind the task returned by UseCaseHandler.execute to the page lifecycle,
+    // e.g. UseCaseHandler.getInstance().execute(useCase, values, callback).bindTo(getViewLifecycleOwner()).
     // This allows the data layer to be notified to cancel the request in time when the page is about to exit
     // and the download request is not yet completed, avoiding resource waste and unpredictable issues.
 
@@ -56,29 +59,45 @@ public class CanBeStoppedUseCase extends UseCase<CanBeStoppedUseCase.RequestValu
     // analysis: https://xiaozhuanlan.com/topic/3684721950
 
     @Override
-    public void onStop(@NonNull LifecycleOwner owner) {
-        if (getRequestValues() != null) {
-//            downloadState.isForgive = true;
-//            downloadState.file = null;
-//            downloadState.progress = 0;
-//            getUseCaseCallback().onError();
-        }
-    }
-
-    @Override
-    protected void executeUseCase(RequestValues requestValues) {
+    protected void executeUseCase(RequestValues requestValues, UseCaseTask<ResponseValue> task) {
 
         // Access data layer resources to handle business logic with stoppable characteristics
 
-//        DataRepository.getInstance().downloadFile(downloadState, dataResult -> {
-//            getUseCaseCallback().onSuccess(new ResponseValue(dataResult));
-//        });
+        // The download joins the shared queue like any user download, progress is reported from the transfer's
+        // own thread and the deferred task doesn't hold a UseCase worker meanwhile.
+        // Cancelling the task releases its handle, which stops the transfer unless another caller shares it
+        DownloadScheduler.Handle download = DataRepository.getInstance().getDownloadScheduler()
+            .enqueue(requestValues.getUrl(), requestValues.getFile(), DownloadScheduler.Priority.USER_INITIATED);
+        task.defer();
+        Disposable disposable = download.progress().subscribe(
+            state -> task.onSuccess(new ResponseValue(new DataResult<>(state))),
+            // A CancellationException means the transfer was cancelled under us, the file is partial or missing
+            e -> task.onError(new UseCaseException(e, ResultSource.NETWORK)),
+            task::complete);
+        task.onCancel(() -> {
+            disposable.dispose();
+            download.cancel();
+        });
     }
 
     public static final class RequestValues implements UseCase.RequestValues {
 
-    }
+        private final String mUrl;
+        private final File mFile;
+
+        public RequestValues(String url, File file) {
+            mUrl = url;
+            mFile = file;
+        }
 
+        public String getUrl() {
+            return mUrl;
+        }
+
+        public File getFile() {
+            return mFile;
+        }
+    }
     public static final class ResponseValue implements UseCase.ResponseValue {
 
         private final DataResult<DownloadState> mDataResult;
@@ -1,40 +1,60 @@
 package com.kunminx.puremusic.domain.usecase;
 
+import com.kunminx.architecture.data.response.ResultSource;
+import com.kunminx.architecture.domain.usecase.RetryPolicy;
 import com.kunminx.architecture.domain.usecase.UseCase;
+import com.kunminx.architecture.domain.usecase.UseCaseException;
+import com.kunminx.architecture.domain.usecase.UseCaseTask;
 import com.kunminx.puremusic.data.config.Const;
+import com.kunminx.puremusic.data.repository.DataRepository;
+import com.kunminx.puremusic.data.repository.DownloadScheduler;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URL;
+
+import io.reactivex.disposables.Disposable;
+import okhttp3.HttpUrl;
 
 /**
  * Create by KunMinX at 20/03/16
  */
 public class DownloadUseCase extends UseCase<DownloadUseCase.RequestValues, DownloadUseCase.ResponseValue> {
 
+    private static final RetryPolicy RETRY_POLICY = RetryPolicy.exponential(3, 500, 5_000);
+
     @Override
-    protected void executeUseCase(RequestValues requestValues) {
-        try {
-            URL url = new URL(requestValues.url);
-            InputStream is = url.openStream();
-            File file = new File(Const.COVER_PATH, requestValues.path);
-            OutputStream os = new FileOutputStream(file);
-            byte[] buffer = new byte[1024];
-            int len = 0;
-            while ((len = is.read(buffer)) > 0) {
-                os.write(buffer, 0, len);
-            }
-            is.close();
-            os.close();
-
-            getUseCaseCallback().onSuccess(new ResponseValue(file));
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    protected void executeUseCase(RequestValues requestValues, UseCaseTask<ResponseValue> task) {
+        File file = new File(Const.COVER_PATH, requestValues.path);
+
+        // Covers share the download queue with user downloads, which go first,
+        // the deferred task doesn't hold a UseCase worker while the cover waits or downloads
+        DownloadScheduler.Handle download = DataRepository.getInstance().getDownloadScheduler()
+            .enqueue(requestValues.url, file, DownloadScheduler.Priority.COVER_ART);
+        task.defer();
+        Disposable disposable = download.progress().subscribe(
+            state -> {
+            },
+            // Retried per getRetryPolicy, the partial file is resumed on the next attempt.
+            // A CancellationException means the transfer was cancelled under us, the file is partial or missing
+            e -> task.onError(new UseCaseException(e, ResultSource.NETWORK)),
+            () -> {
+                task.onSuccess(new ResponseValue(file));
+                task.complete();
+            });
+        task.onCancel(() -> {
+            disposable.dispose();
+            download.cancel();
+        });
+    }
+
+    @Override
+    protected RetryPolicy getRetryPolicy() {
+        return RETRY_POLICY;
+    }
+
+    @Override
+    protected String getCircuitKey(RequestValues requestValues) {
+        HttpUrl url = HttpUrl.parse(requestValues.url);
+        return url == null ? null : url.host();
     }
 
     public static final class RequestValues implements UseCase.RequestValues {
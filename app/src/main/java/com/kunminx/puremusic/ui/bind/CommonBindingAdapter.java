@@ -26,6 +26,11 @@ import androidx.coordinatorlayout.widget.CoordinatorLayout;
 import androidx.databinding.BindingAdapter;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.kunminx.architecture.utils.ClickUtils;
 
 /**
@@ -33,9 +38,26 @@ import com.kunminx.architecture.utils.ClickUtils;
  */
 public class CommonBindingAdapter {
 
-    @BindingAdapter(value = {"imageUrl", "placeHolder"}, requireAll = false)
-    public static void imageUrl(ImageView view, String url, Drawable placeHolder) {
-        Glide.with(view.getContext()).load(url).placeholder(placeHolder).into(view);
+    /**
+     * Glide.with(view) scopes the request to the fragment hosting the view, so pages that are stopped
+     * stop decoding, instead of the activity scope view.getContext() resolves to.
+     * <p>
+     * imageSize: decode size in pixels, for views that are resized after binding, e.g. animated album art.
+     * thumbnail: size multiplier of a low-res pass shown first, 0 for none.
+     * decodeFormat / diskCacheStrategy / priority: passed on to Glide, its defaults when unset.
+     */
+    @BindingAdapter(value = {"imageUrl", "placeHolder", "imageSize", "thumbnail",
+        "decodeFormat", "diskCacheStrategy", "priority"}, requireAll = false)
+    public static void imageUrl(ImageView view, String url, Drawable placeHolder, int imageSize, float thumbnail,
+                                DecodeFormat decodeFormat, DiskCacheStrategy diskCacheStrategy, Priority priority) {
+        RequestManager requestManager = Glide.with(view);
+        RequestBuilder<Drawable> request = requestManager.load(url).placeholder(placeHolder);
+        if (imageSize > 0) request = request.override(imageSize);
+        if (thumbnail > 0 && thumbnail < 1) request = request.thumbnail(requestManager.load(url).sizeMultiplier(thumbnail));
+        if (decodeFormat != null) request = request.format(decodeFormat);
+        if (diskCacheStrategy != null) request = request.diskCacheStrategy(diskCacheStrategy);
+        if (priority != null) request = request.priority(priority);
+        request.into(view);
     }
 
     @BindingAdapter(value = {"visible"}, requireAll = false)
@@ -16,8 +16,8 @@
 
 package com.kunminx.puremusic.ui.page;
 
-import android.annotation.SuppressLint;
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.view.View;
 
 import androidx.annotation.NonNull;
@@ -82,7 +82,6 @@ public class MainFragment extends BaseFragment {
             .addBindingParam(BR.adapter, mAdapter);
     }
 
-    @SuppressLint("NotifyDataSetChanged")
     @Override
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
@@ -93,7 +92,8 @@ public class MainFragment extends BaseFragment {
         // For more details, refer to: https://xiaozhuanlan.com/topic/6017825943 & https://juejin.cn/post/7117498113983512589
 
         PlayerManager.getInstance().getUiStates().observe(getViewLifecycleOwner(), uiStates -> {
-            mStates.musicId.set(uiStates.getMusicId(), changed -> mAdapter.notifyDataSetChanged());
+            mStates.musicId.set(uiStates.getMusicId(), changed ->
+                mAdapter.setPlayingIndex(PlayerManager.getInstance().getAlbumIndex()));
         });
 
         //TODO tip 4:
@@ -101,6 +101,10 @@ public class MainFragment extends BaseFragment {
         // In a fragment, use `getViewLifecycleOwner` as the observer for liveData.
         // No changes are needed for Activity.
 
+        mMusicRequester.getFreeMusicPagesResult().observe(getViewLifecycleOwner(), musics -> {
+            if (PlayerManager.getInstance().getAlbum() == null) mStates.list.set(musics);
+        });
+
         mMusicRequester.getFreeMusicsResult().observe(getViewLifecycleOwner(), dataResult -> {
             if (!dataResult.getResponseStatus().isSuccess()) return;
 
@@ -111,9 +115,15 @@ public class MainFragment extends BaseFragment {
 
             // For more details, refer to: https://xiaozhuanlan.com/topic/6719328450
 
+            // The cached album is pushed back first and the refreshed one after it, a refresh only updates the list,
+            // the player is handed an album on first load or when it is a different album than the playing one
+
             if (musicAlbum != null && musicAlbum.musics != null) {
                 mStates.list.set(musicAlbum.musics);
-                PlayerManager.getInstance().loadAlbum(musicAlbum);
+                TestAlbum playing = PlayerManager.getInstance().getAlbum();
+                if (playing == null || !TextUtils.equals(playing.albumId, musicAlbum.albumId)) {
+                    PlayerManager.getInstance().loadAlbum(musicAlbum);
+                }
             }
         });
 
@@ -29,6 +29,7 @@ import com.kunminx.architecture.ui.page.DataBindingConfig;
 import com.kunminx.architecture.ui.page.StateHolder;
 import com.kunminx.architecture.ui.state.State;
 import com.kunminx.architecture.utils.Res;
+import com.kunminx.architecture.utils.ScreenUtils;
 import com.kunminx.architecture.utils.ToastUtils;
 import com.kunminx.architecture.utils.Utils;
 import com.kunminx.player.domain.PlayingInfoManager;
@@ -84,6 +85,8 @@ public class PlayerFragment extends BaseFragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
+        mStates.coverSize.set(ScreenUtils.getScreenWidth());
+
         // TODO tip 3: Demonstrates using the "trusted source" MVI-Dispatcher input-output interface for message sending and receiving
 
         mMessenger.output(this, messages -> {
@@ -196,6 +199,9 @@ public class PlayerFragment extends BaseFragment {
         public final State<String> artist = new State<>(Utils.getApp().getString(R.string.app_name), true);
         public final State<String> coverImg = new State<>("", true);
         public final State<Drawable> placeHolder = new State<>(Res.getDrawable(R.drawable.bg_album_default), true);
+        // The portrait album art grows from the collapsed header to the screen width, so it is decoded once at its largest size,
+        // set per view since the width changes with rotation, the landscape art has a fixed size and is sized by Glide
+        public final State<Integer> coverSize = new State<>(0, true);
         public final State<Integer> maxSeekDuration = new State<>(0, true);
         public final State<Integer> currentSeekPosition = new State<>(0, true);
         public final State<Boolean> isPlaying = new State<>(false, true);
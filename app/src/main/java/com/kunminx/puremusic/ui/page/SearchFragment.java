@@ -28,12 +28,15 @@ import com.kunminx.architecture.ui.page.StateHolder;
 import com.kunminx.architecture.ui.state.State;
 import com.kunminx.puremusic.BR;
 import com.kunminx.puremusic.R;
+import com.kunminx.puremusic.data.api.APIs;
 import com.kunminx.puremusic.data.bean.DownloadState;
 import com.kunminx.puremusic.data.config.Const;
 import com.kunminx.puremusic.domain.event.DownloadEvent;
 import com.kunminx.puremusic.domain.message.DrawerCoordinateManager;
 import com.kunminx.puremusic.domain.request.DownloadRequester;
 
+import java.io.File;
+
 /**
  * Created by KunMinX on 19/10/29
  */
@@ -128,13 +131,15 @@ public class SearchFragment extends BaseFragment {
         // TODO tip: Same as tip 8
 
         public void testDownload() {
-            mGlobalDownloadRequester.input(new DownloadEvent(DownloadEvent.EVENT_DOWNLOAD_GLOBAL));
+            mGlobalDownloadRequester.input(new DownloadEvent(DownloadEvent.EVENT_DOWNLOAD_GLOBAL,
+                APIs.DOWNLOAD_DEMO_URL, new File(Const.DOWNLOAD_PATH, "download_global.png")));
         }
 
         // TODO tip 5: Execute downloadable tasks that follow the lifecycle's end in the UseCase.
 
         public void testLifecycleDownload() {
-            mDownloadRequester.input(new DownloadEvent(DownloadEvent.EVENT_DOWNLOAD));
+            mDownloadRequester.input(new DownloadEvent(DownloadEvent.EVENT_DOWNLOAD,
+                APIs.DOWNLOAD_DEMO_URL, new File(Const.DOWNLOAD_PATH, "download.png")));
         }
     }
 
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.puremusic.ui.page.adapter;
+
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+import com.kunminx.puremusic.BuildConfig;
+import com.kunminx.puremusic.data.bean.TestAlbum;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Loads the covers of the next rows into Glide's memory cache ahead of the scroll direction,
+ * so a fling binds them from memory instead of showing the placeholder first.
+ * <p>
+ * Requests are made exactly like the imageUrl binding makes them for the row (same url, size and
+ * optional center crop), otherwise the memory cache key would differ and the prefetch miss.
+ * Prefetches of rows that scroll more than distance rows away are cancelled.
+ */
+final class CoverPrefetcher extends RecyclerView.OnScrollListener {
+
+    private static final String TAG = "CoverPrefetcher";
+
+    private final RequestManager mRequestManager;
+    private final PlaylistAdapter mAdapter;
+    private final int mDistance;
+    private final int mSize;
+    private final SparseArray<Target<Drawable>> mTargets = new SparseArray<>();
+    private final SparseArray<String> mTargetUrls = new SparseArray<>();
+    private final Set<String> mReady = new HashSet<>();
+    private boolean mScrolled;
+    private int mHits;
+    private int mMisses;
+
+    /**
+     * @param distance rows prefetched past the last visible one, K
+     * @param size     edge of the cover view, in pixels
+     */
+    CoverPrefetcher(RecyclerView recyclerView, PlaylistAdapter adapter, int distance, int size) {
+        mRequestManager = Glide.with(recyclerView);
+        mAdapter = adapter;
+        mDistance = distance;
+        mSize = size;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0 || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) return;
+        mScrolled = true;
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) return;
+
+        cancelOutside(first - mDistance, last + mDistance);
+        List<TestAlbum.TestMusic> musics = mAdapter.getCurrentList();
+        int from = dy > 0 ? last + 1 : Math.max(0, first - mDistance);
+        int to = dy > 0 ? Math.min(musics.size() - 1, last + mDistance) : first - 1;
+        for (int position = from; position <= to; position++) {
+            if (mTargets.get(position) == null) prefetch(position, musics.get(position).coverImg);
+        }
+    }
+
+    @Override
+    public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+        if (BuildConfig.DEBUG && newState == RecyclerView.SCROLL_STATE_IDLE && mScrolled) {
+            Log.d(TAG, String.format(Locale.US, "distance %d, hit rate %.0f%% (%d / %d)",
+                mDistance, getHitRate() * 100, mHits, mHits + mMisses));
+        }
+    }
+
+    /**
+     * Accounts a row bind, a hit when its cover was prefetched in time.
+     */
+    void onBind(String url) {
+        if (!mScrolled) return;
+        if (url != null && mReady.contains(url)) mHits++;
+        else mMisses++;
+    }
+
+    /**
+     * Share of rows bound while scrolling whose cover was already in memory, to tune the distance by.
+     */
+    float getHitRate() {
+        int total = mHits + mMisses;
+        return total == 0 ? 0 : (float) mHits / total;
+    }
+
+    /**
+     * Cancels every prefetch, e.g. when the list is replaced or the adapter detached.
+     */
+    void cancelAll() {
+        cancelOutside(Integer.MAX_VALUE, Integer.MIN_VALUE);
+    }
+
+    private void prefetch(int position, String url) {
+        if (url == null) return;
+        mTargetUrls.put(position, url);
+        mTargets.put(position, mRequestManager.load(url)
+            .optionalCenterCrop()
+            .listener(new RequestListener<Drawable>() {
+                @Override
+                public boolean onLoadFailed(@Nullable GlideException e, @Nullable Object model,
+                                            @NonNull Target<Drawable> target, boolean isFirstResource) {
+                    return false;
+                }
+
+                @Override
+                public boolean onResourceReady(@NonNull Drawable resource, @NonNull Object model,
+                                               Target<Drawable> target, @NonNull DataSource dataSource,
+                                               boolean isFirstResource) {
+                    mReady.add(url);
+                    return false;
+                }
+            })
+            .preload(mSize, mSize));
+    }
+
+    private void cancelOutside(int from, int to) {
+        for (int i = mTargets.size() - 1; i >= 0; i--) {
+            int position = mTargets.keyAt(i);
+            if (position >= from && position <= to) continue;
+            Target<Drawable> target = mTargets.valueAt(i);
+            mTargets.removeAt(i);
+            mReady.remove(mTargetUrls.get(position));
+            mTargetUrls.remove(position);
+            // Rows that come back are requested again, and mostly served from the memory cache then
+            mRequestManager.clear(target);
+        }
+    }
+}
@@ -18,10 +18,13 @@ package com.kunminx.puremusic.ui.page.adapter;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.kunminx.puremusic.data.bean.LibraryInfo;
 import com.kunminx.puremusic.data.bean.TestAlbum;
 
+import java.util.Objects;
+
 /**
  * Create by KunMinX at 2020/7/19
  */
@@ -40,17 +43,29 @@ public class DiffUtils {
         return S_DIFF_UTILS;
     }
 
+    /**
+     * Payload of a row whose key stayed but whose fields changed, so the ViewHolder is rebound in place
+     * instead of cross-faded with a new one.
+     */
+    public static final Object PAYLOAD_CONTENT = new Object();
+
     public DiffUtil.ItemCallback<LibraryInfo> getLibraryInfoItemCallback() {
         if (mLibraryInfoItemCallback == null) {
             mLibraryInfoItemCallback = new DiffUtil.ItemCallback<LibraryInfo>() {
                 @Override
                 public boolean areItemsTheSame(@NonNull LibraryInfo oldItem, @NonNull LibraryInfo newItem) {
-                    return oldItem.equals(newItem);
+                    return Objects.equals(oldItem.getUrl(), newItem.getUrl());
                 }
 
                 @Override
                 public boolean areContentsTheSame(@NonNull LibraryInfo oldItem, @NonNull LibraryInfo newItem) {
-                    return oldItem.getTitle().equals(newItem.getTitle());
+                    return Objects.equals(oldItem.getTitle(), newItem.getTitle())
+                        && Objects.equals(oldItem.getSummary(), newItem.getSummary());
+                }
+
+                @Override
+                public Object getChangePayload(@NonNull LibraryInfo oldItem, @NonNull LibraryInfo newItem) {
+                    return PAYLOAD_CONTENT;
                 }
             };
         }
@@ -62,15 +77,40 @@ public class DiffUtils {
             mTestMusicItemCallback = new DiffUtil.ItemCallback<TestAlbum.TestMusic>() {
                 @Override
                 public boolean areItemsTheSame(@NonNull TestAlbum.TestMusic oldItem, @NonNull TestAlbum.TestMusic newItem) {
-                    return oldItem.equals(newItem);
+                    return Objects.equals(oldItem.musicId, newItem.musicId);
                 }
 
                 @Override
                 public boolean areContentsTheSame(@NonNull TestAlbum.TestMusic oldItem, @NonNull TestAlbum.TestMusic newItem) {
-                    return oldItem.musicId.equals(newItem.musicId);
+                    return Objects.equals(oldItem.title, newItem.title)
+                        && Objects.equals(oldItem.coverImg, newItem.coverImg)
+                        && Objects.equals(oldItem.url, newItem.url)
+                        && Objects.equals(artistName(oldItem), artistName(newItem));
+                }
+
+                @Override
+                public Object getChangePayload(@NonNull TestAlbum.TestMusic oldItem, @NonNull TestAlbum.TestMusic newItem) {
+                    return PAYLOAD_CONTENT;
                 }
             };
         }
         return mTestMusicItemCallback;
     }
+
+    /**
+     * Stable id of a row from its key, the same key areItemsTheSame compares by.
+     */
+    public static long stableId(String key) {
+        if (key == null) return RecyclerView.NO_ID;
+        // 64-bit string hash, String.hashCode's 32 bits collide too easily over a large album
+        long hash = 1125899906842597L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = 31 * hash + key.charAt(i);
+        }
+        return hash == RecyclerView.NO_ID ? 0 : hash;
+    }
+
+    private static String artistName(TestAlbum.TestMusic music) {
+        return music.artist == null ? null : music.artist.name;
+    }
 }
@@ -41,6 +41,12 @@ public class DrawerAdapter extends SimpleDataBindingAdapter<LibraryInfo, Adapter
             Intent intent = new Intent(Intent.ACTION_VIEW, uri);
             mContext.startActivity(intent);
         });
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return DiffUtils.stableId(getCurrentList().get(position).getUrl());
     }
 
     @Override
@@ -19,6 +19,8 @@ package com.kunminx.puremusic.ui.page.adapter;
 import android.content.Context;
 import android.graphics.Color;
 
+import androidx.annotation.NonNull;
+import androidx.databinding.DataBindingUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.kunminx.binding_recyclerview.adapter.SimpleDataBindingAdapter;
@@ -27,20 +29,97 @@ import com.kunminx.puremusic.data.bean.TestAlbum;
 import com.kunminx.puremusic.databinding.AdapterPlayItemBinding;
 import com.kunminx.puremusic.domain.proxy.PlayerManager;
 
+import java.util.List;
+
 /**
  * Create by KunMinX at 20/4/19
  */
 public class PlaylistAdapter extends SimpleDataBindingAdapter<TestAlbum.TestMusic, AdapterPlayItemBinding> {
 
+    /**
+     * Rows whose covers are prefetched ahead of the scroll, tune by the hit rate CoverPrefetcher logs in debug builds
+     */
+    private static final int PREFETCH_DISTANCE = 6;
+
+    private static final Object PAYLOAD_PLAY_STATUS = new Object();
+
+    private CoverPrefetcher mPrefetcher;
+
+    private int mPlayingIndex = PlayerManager.getInstance().getAlbumIndex();
+
     public PlaylistAdapter(Context context) {
         super(context, R.layout.adapter_play_item, DiffUtils.getInstance().getTestMusicItemCallback());
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return DiffUtils.stableId(getCurrentList().get(position).musicId);
+    }
+
+    /**
+     * Moves the playing mark, rebinding only the play status of the previous and the new row.
+     */
+    public void setPlayingIndex(int index) {
+        if (index == mPlayingIndex) return;
+        int previous = mPlayingIndex;
+        mPlayingIndex = index;
+        if (previous >= 0 && previous < getItemCount()) notifyItemChanged(previous, PAYLOAD_PLAY_STATUS);
+        if (index >= 0 && index < getItemCount()) notifyItemChanged(index, PAYLOAD_PLAY_STATUS);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        mPrefetcher = new CoverPrefetcher(recyclerView, this, PREFETCH_DISTANCE,
+            recyclerView.getResources().getDimensionPixelSize(R.dimen.playlist_cover_size));
+        recyclerView.addOnScrollListener(mPrefetcher);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        if (mPrefetcher != null) {
+            recyclerView.removeOnScrollListener(mPrefetcher);
+            mPrefetcher.cancelAll();
+            mPrefetcher = null;
+        }
+        super.onDetachedFromRecyclerView(recyclerView);
+    }
+
+    @Override
+    public void onCurrentListChanged(@NonNull List<TestAlbum.TestMusic> previousList,
+                                     @NonNull List<TestAlbum.TestMusic> currentList) {
+        super.onCurrentListChanged(previousList, currentList);
+        // Prefetches are keyed by position, which a new list invalidates
+        if (mPrefetcher != null) mPrefetcher.cancelAll();
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        AdapterPlayItemBinding binding = DataBindingUtil.getBinding(holder.itemView);
+        if (binding != null && !payloads.isEmpty() && onlyPlayStatus(payloads)) {
+            bindPlayStatus(binding, position);
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
     }
 
     @Override
     protected void onBindItem(AdapterPlayItemBinding binding, TestAlbum.TestMusic item, RecyclerView.ViewHolder holder) {
+        if (mPrefetcher != null) mPrefetcher.onBind(item.coverImg);
         binding.setAlbum(item);
-        int currentIndex = PlayerManager.getInstance().getAlbumIndex();
-        binding.ivPlayStatus.setColor(currentIndex == holder.getAbsoluteAdapterPosition()
+        bindPlayStatus(binding, holder.getAbsoluteAdapterPosition());
+    }
+
+    private void bindPlayStatus(AdapterPlayItemBinding binding, int position) {
+        binding.ivPlayStatus.setColor(mPlayingIndex == position
             ? binding.getRoot().getContext().getColor(R.color.gray) : Color.TRANSPARENT);
     }
+
+    private static boolean onlyPlayStatus(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_PLAY_STATUS) return false;
+        }
+        return true;
+    }
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.puremusic.ui.widget;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.LruCache;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.kunminx.architecture.utils.ImageUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Notification-sized album covers, keyed by musicId.
+ * <p>
+ * Memory: an LRU of bitmaps already at the RemoteViews size, so play / pause updates never decode.
+ * Disk: the same bitmaps re-encoded into the cache dir, cheap to decode on the next start.
+ * Source: the downloaded full-size cover, sampled and scaled down to the target size and written back to both tiers.
+ * <p>
+ * Covers dropped from memory go back to the {@link ImageUtils#getBitmapPool() bitmap pool}, so the next decode
+ * reuses their allocation, unless the notification still shows them or they were just handed out to be shown:
+ * those are pooled once {@link #onShown(Bitmap)} reports that the notification has moved on.
+ */
+final class CoverArtCache {
+
+    private static final int THUMBNAIL_QUALITY = 90;
+
+    private final LruCache<String, Bitmap> mMemory;
+    private final File mDiskDir;
+    private final int mSize;
+
+    // Guarded by this: the cover in the posted notification, the one last handed out to be posted,
+    // and covers dropped from memory while they were either of them
+    private Bitmap mShown;
+    private Bitmap mHandedOut;
+    private final List<Bitmap> mDropped = new ArrayList<>(2);
+
+    private final AtomicInteger mMemoryHits = new AtomicInteger();
+    private final AtomicInteger mDiskHits = new AtomicInteger();
+    private final AtomicInteger mSourceDecodes = new AtomicInteger();
+    private final AtomicInteger mMisses = new AtomicInteger();
+    private final AtomicInteger mDecodes = new AtomicInteger();
+    private final AtomicLong mDecodeNanos = new AtomicLong();
+
+    /**
+     * @param diskDir thumbnails directory, created on demand
+     * @param size    edge of the square the covers are decoded for, in pixels
+     */
+    CoverArtCache(File diskDir, int size) {
+        mDiskDir = diskDir;
+        mSize = size;
+        // A handful of covers is all a notification needs, 1/64 of the heap holds dozens at 128dp
+        int maxKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 64);
+        mMemory = new LruCache<String, Bitmap>(maxKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount() / 1024;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue != newValue) drop(oldValue);
+            }
+        };
+    }
+
+    @MainThread
+    @Nullable
+    Bitmap getFromMemory(String musicId) {
+        Bitmap bitmap = mMemory.get(musicId);
+        if (bitmap != null) mMemoryHits.incrementAndGet();
+        return handOut(bitmap);
+    }
+
+    /**
+     * Looks the cover up on disk, then decodes it from source, and keeps it in memory.
+     *
+     * @return null when the source hasn't been downloaded yet
+     */
+    @WorkerThread
+    @Nullable
+    Bitmap load(String musicId, File source) {
+        Bitmap bitmap = mMemory.get(musicId);
+        if (bitmap != null) {
+            mMemoryHits.incrementAndGet();
+            return handOut(bitmap);
+        }
+        File thumbnail = new File(mDiskDir, musicId + ".jpg");
+        if (thumbnail.exists()) {
+            bitmap = timedDecode(thumbnail);
+            if (bitmap != null) mDiskHits.incrementAndGet();
+        }
+        if (bitmap == null && source.exists()) {
+            bitmap = timedDecode(source);
+            if (bitmap != null) {
+                mSourceDecodes.incrementAndGet();
+                writeThumbnail(bitmap, thumbnail);
+            }
+        }
+        if (bitmap == null) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+        handOut(bitmap);
+        mMemory.put(musicId, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Reports the cover the posted notification shows, null for none. The notification has been parceled by then,
+     * so the cover shown before can go back to the pool if it has been dropped from memory in the meantime.
+     */
+    @MainThread
+    synchronized void onShown(@Nullable Bitmap cover) {
+        Bitmap previous = mShown;
+        mShown = cover;
+        poolIfDropped(previous);
+    }
+
+    private synchronized Bitmap handOut(@Nullable Bitmap bitmap) {
+        if (bitmap == null) return null;
+        Bitmap previous = mHandedOut;
+        mHandedOut = bitmap;
+        poolIfDropped(previous);
+        return bitmap;
+    }
+
+    private synchronized void drop(Bitmap bitmap) {
+        if (bitmap == mShown || bitmap == mHandedOut) mDropped.add(bitmap);
+        else ImageUtils.release(bitmap);
+    }
+
+    private void poolIfDropped(@Nullable Bitmap bitmap) {
+        if (bitmap != null && bitmap != mShown && bitmap != mHandedOut && mDropped.remove(bitmap)) {
+            ImageUtils.release(bitmap);
+        }
+    }
+
+    private Bitmap timedDecode(File file) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        // Thumbnails are already at size and decode 1:1, sources are sampled and scaled to it
+        Bitmap bitmap = ImageUtils.getBitmap(file.getAbsolutePath(), mSize, mSize, Bitmap.Config.ARGB_8888, true);
+        mDecodeNanos.addAndGet(SystemClock.elapsedRealtimeNanos() - start);
+        mDecodes.incrementAndGet();
+        return bitmap;
+    }
+
+    private void writeThumbnail(Bitmap bitmap, File thumbnail) {
+        if (!mDiskDir.exists() && !mDiskDir.mkdirs()) return;
+        File temp = new File(mDiskDir, thumbnail.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out);
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(thumbnail)) temp.delete();
+    }
+
+    /**
+     * Share of lookups answered by the memory or disk tier, without decoding the source.
+     */
+    float getHitRate() {
+        int hits = mMemoryHits.get() + mDiskHits.get();
+        int total = hits + mSourceDecodes.get() + mMisses.get();
+        return total == 0 ? 0 : (float) hits / total;
+    }
+
+    float getAverageDecodeMillis() {
+        int decodes = mDecodes.get();
+        return decodes == 0 ? 0 : mDecodeNanos.get() / 1_000_000f / decodes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "memory %d, disk %d, source %d, miss %d, hit rate %.0f%%, decode %.1fms avg",
+            mMemoryHits.get(), mDiskHits.get(), mSourceDecodes.get(), mMisses.get(),
+            getHitRate() * 100, getAverageDecodeMillis());
+    }
+}
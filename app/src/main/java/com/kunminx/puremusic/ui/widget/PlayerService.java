@@ -28,14 +28,18 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 import android.os.Build;
 import android.os.IBinder;
+import android.util.Log;
 import android.view.View;
 import android.widget.RemoteViews;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
+import com.kunminx.architecture.domain.request.AsyncTask;
 import com.kunminx.architecture.domain.usecase.UseCaseHandler;
-import com.kunminx.architecture.utils.ImageUtils;
+import com.kunminx.architecture.domain.usecase.UseCaseTask;
+import com.kunminx.puremusic.BuildConfig;
 import com.kunminx.puremusic.MainActivity;
 import com.kunminx.puremusic.R;
 import com.kunminx.puremusic.data.bean.TestAlbum;
@@ -45,6 +49,9 @@ import com.kunminx.puremusic.domain.usecase.DownloadUseCase;
 
 import java.io.File;
 
+import io.reactivex.ObservableEmitter;
+import io.reactivex.disposables.Disposable;
+
 /**
  * Create by KunMinX at 19/7/17
  */
@@ -55,9 +62,23 @@ public class PlayerService extends Service {
     public static final String NOTIFY_PAUSE = "pure_music.kunminx.pause";
     public static final String NOTIFY_PLAY = "pure_music.kunminx.play";
     public static final String NOTIFY_NEXT = "pure_music.kunminx.next";
+    private static final String TAG = "PlayerService";
     private static final String GROUP_ID = "group_001";
     private static final String CHANNEL_ID = "channel_001";
+    private static final int NOTIFICATION_ID = 5;
     private DownloadUseCase mDownloadUseCase;
+    private UseCaseTask<DownloadUseCase.ResponseValue> mCoverTask;
+    private String mCoverMusicId;
+    private CoverArtCache mCoverCache;
+    private Disposable mCoverDisposable;
+    private String mLoadingMusicId;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mCoverCache = new CoverArtCache(new File(getCacheDir(), "notify_covers"),
+            getResources().getDimensionPixelSize(R.dimen.notify_cover_size));
+    }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
@@ -67,11 +88,70 @@ public class PlayerService extends Service {
             return START_NOT_STICKY;
         }
 
-        createNotification(results);
+        // Play / pause and repeated starts hit the memory tier, only a new cover is loaded, off the main thread
+        Bitmap cover = mCoverCache.getFromMemory(results.musicId);
+        Notification notification = createNotification(results, cover);
+        if (notification != null) {
+            startForeground(NOTIFICATION_ID, notification);
+            mCoverCache.onShown(cover);
+        }
+        if (cover == null) loadCover(results, true);
         return START_NOT_STICKY;
     }
 
-    private void createNotification(TestAlbum.TestMusic testMusic) {
+    /**
+     * Loads the cover from the disk tier or the downloaded source, and swaps it into the posted notification.
+     * A cover not downloaded yet is requested when download is set, and loaded again once it is.
+     */
+    private void loadCover(TestAlbum.TestMusic testMusic, boolean download) {
+        if (testMusic.musicId.equals(mLoadingMusicId)) return;
+        if (mCoverDisposable != null) mCoverDisposable.dispose();
+        mLoadingMusicId = testMusic.musicId;
+
+        File source = new File(Const.COVER_PATH, testMusic.musicId + ".jpg");
+        AsyncTask.doIO((ObservableEmitter<Bitmap> emitter) -> {
+            Bitmap bitmap = mCoverCache.load(testMusic.musicId, source);
+            if (bitmap != null) emitter.onNext(bitmap);
+            emitter.onComplete();
+        }).subscribe(new AsyncTask.Observer<Bitmap>() {
+            private boolean mLoaded;
+
+            @Override
+            public void onSubscribe(@NonNull Disposable d) {
+                mCoverDisposable = d;
+            }
+
+            @Override
+            public void onNext(@NonNull Bitmap bitmap) {
+                mLoaded = true;
+                if (BuildConfig.DEBUG) Log.d(TAG, "cover " + testMusic.musicId + ": " + mCoverCache);
+                if (!isCurrent(testMusic)) return;
+                Notification notification = createNotification(testMusic, bitmap);
+                if (notification != null) {
+                    NotificationManager notificationManager = (NotificationManager)
+                        getSystemService(Context.NOTIFICATION_SERVICE);
+                    notificationManager.notify(NOTIFICATION_ID, notification);
+                    mCoverCache.onShown(bitmap);
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                mLoadingMusicId = null;
+                if (!mLoaded && download && isCurrent(testMusic)) {
+                    requestAlbumCover(testMusic.coverImg, testMusic.musicId);
+                }
+            }
+        });
+    }
+
+    private boolean isCurrent(TestAlbum.TestMusic testMusic) {
+        TestAlbum.TestMusic current = PlayerManager.getInstance().getCurrentPlayingMusic();
+        return current != null && testMusic.musicId.equals(current.musicId);
+    }
+
+    @Nullable
+    private Notification createNotification(TestAlbum.TestMusic testMusic, @Nullable Bitmap cover) {
         try {
             String title = testMusic.title;
             TestAlbum album = PlayerManager.getInstance().getAlbum();
@@ -135,22 +215,19 @@ public class PlayerService extends Service {
             notification.bigContentView.setTextViewText(R.id.player_author_name, summary);
             notification.flags |= Notification.FLAG_ONGOING_EVENT;
 
-            String coverPath = Const.COVER_PATH + File.separator + testMusic.musicId + ".jpg";
-            Bitmap bitmap = ImageUtils.getBitmap(coverPath);
-
-            if (bitmap != null) {
-                notification.contentView.setImageViewBitmap(R.id.player_album_art, bitmap);
-                notification.bigContentView.setImageViewBitmap(R.id.player_album_art, bitmap);
+            if (cover != null) {
+                notification.contentView.setImageViewBitmap(R.id.player_album_art, cover);
+                notification.bigContentView.setImageViewBitmap(R.id.player_album_art, cover);
             } else {
-                requestAlbumCover(testMusic.coverImg, testMusic.musicId);
                 notification.contentView.setImageViewResource(R.id.player_album_art, R.drawable.bg_album_default);
                 notification.bigContentView.setImageViewResource(R.id.player_album_art, R.drawable.bg_album_default);
             }
 
-            startForeground(5, notification);
+            return notification;
 
         } catch (Exception e) {
             e.printStackTrace();
+            return null;
         }
     }
 
@@ -185,13 +262,29 @@ public class PlayerService extends Service {
             mDownloadUseCase = new DownloadUseCase();
         }
 
-        UseCaseHandler.getInstance().execute(mDownloadUseCase,
+        // Only the cover of the current music matters, drop a download still running for the previous one
+        if (mCoverTask != null) {
+            if (musicId.equals(mCoverMusicId) && !mCoverTask.isDone() && !mCoverTask.isCancelled()) return;
+            mCoverTask.cancel();
+        }
+
+        mCoverMusicId = musicId;
+        mCoverTask = UseCaseHandler.getInstance().execute(mDownloadUseCase,
             new DownloadUseCase.RequestValues(coverUrl, musicId + ".jpg"),
-            response -> startService(new Intent(getApplicationContext(), PlayerService.class)));
+            response -> {
+                TestAlbum.TestMusic current = PlayerManager.getInstance().getCurrentPlayingMusic();
+                if (current != null && musicId.equals(current.musicId)) loadCover(current, false);
+            });
     }
 
     @Override
     public void onDestroy() {
+        if (mCoverTask != null) {
+            mCoverTask.cancel();
+        }
+        if (mCoverDisposable != null) {
+            mCoverDisposable.dispose();
+        }
         super.onDestroy();
     }
 
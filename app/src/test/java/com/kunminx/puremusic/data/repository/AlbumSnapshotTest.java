@@ -0,0 +1,367 @@
+package com.kunminx.puremusic.data.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.kunminx.puremusic.data.bean.TestAlbum;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Round trips albums through {@link AlbumSnapshot}, feeds {@link CatalogCache} corrupt snapshots,
+ * and compares the snapshot with the bundled JSON catalog in size and decode time.
+ */
+public class AlbumSnapshotTest {
+
+    // Offsets of the snapshot header, see AlbumSnapshot
+    private static final int OFFSET_DIGEST = 8;
+    private static final int OFFSET_STRING_COUNT = OFFSET_DIGEST + 32;
+    private static final int OFFSET_MUSIC_COUNT = OFFSET_STRING_COUNT + 4;
+    private static final int HEADER_SIZE = 8 + 32 + 4 + 4 + 6 * 4;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip_bundledCatalog() throws IOException {
+        TestAlbum album = readAsset();
+
+        TestAlbum mapped = map(encode(album)).album;
+
+        assertAlbumEquals(album, mapped);
+    }
+
+    @Test
+    public void roundTrip_nullsEmptyAndUnicode() throws IOException {
+        List<TestAlbum.TestMusic> musics = new ArrayList<>();
+        musics.add(new TestAlbum.TestMusic(null, null, null, null, null));
+        musics.add(new TestAlbum.TestMusic("2", "no-slash.png", "", "晴天", new TestAlbum.TestArtist(null)));
+        musics.add(new TestAlbum.TestMusic("3", "https://a.b/c/d.png", "https://a.b/e.mp3", "🎵 ß", new TestAlbum.TestArtist("周")));
+        TestAlbum album = new TestAlbum("id", null, "", null, "/", musics);
+
+        assertAlbumEquals(album, map(encode(album)).album);
+
+        TestAlbum empty = new TestAlbum(null, null, null, null, null, null);
+        assertEquals(0, map(encode(empty)).album.musics.size());
+    }
+
+    @Test
+    public void roundTrip_keepsDigestAndReencodesIdentically() throws IOException {
+        TestAlbum album = album(500);
+        byte[] bytes = encode(album);
+
+        AlbumSnapshot.Mapped mapped = map(bytes);
+
+        assertAlbumEquals(album, mapped.album);
+        assertTrue(Arrays.equals(Arrays.copyOfRange(bytes, OFFSET_DIGEST, OFFSET_STRING_COUNT), mapped.digest));
+        assertTrue(Arrays.equals(bytes, encode(mapped.album)));
+    }
+
+    @Test
+    public void map_rejectsBodyNotMatchingDigest() throws IOException {
+        byte[] bytes = encode(album(20));
+        bytes[bytes.length - 1] ^= 1;
+
+        assertCorrupt(bytes);
+    }
+
+    @Test
+    public void map_rejectsAlbumRowNotMatchingDigest() throws IOException {
+        byte[] bytes = encode(album(20));
+        // coverName of the album row, pointed at another string that exists
+        ByteBuffer.wrap(bytes).putInt(HEADER_SIZE - 4, 0);
+
+        assertCorrupt(bytes);
+    }
+
+    @Test
+    public void map_withoutVerify_checksOnlyTheHeader() throws IOException {
+        byte[] bytes = encode(album(20));
+        bytes[bytes.length - 1] ^= 1;
+        File file = mFolder.newFile();
+        Files.write(file.toPath(), bytes);
+
+        assertEquals(20, AlbumSnapshot.map(file, false).album.musics.size());
+        try {
+            AlbumSnapshot.map(file, true);
+            fail("Corrupt snapshot was verified");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void map_withoutVerify_failsOnlyTheReadOfACorruptRow() throws IOException {
+        byte[] bytes = encode(album(20));
+        ByteBuffer.wrap(bytes).putInt(HEADER_SIZE, 1_000_000);
+        File file = mFolder.newFile();
+        Files.write(file.toPath(), bytes);
+
+        List<TestAlbum.TestMusic> musics = AlbumSnapshot.map(file, false).album.musics;
+
+        assertEquals("Track 1", musics.get(1).title);
+        try {
+            musics.get(0);
+            fail("Corrupt row was read");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void map_rejectsStringIndexOutOfRange() throws IOException {
+        byte[] bytes = encode(album(20));
+        // musicId of the first row
+        ByteBuffer.wrap(bytes).putInt(HEADER_SIZE, 1_000_000);
+
+        assertCorrupt(resign(bytes));
+    }
+
+    @Test
+    public void map_rejectsStringOffsetOutOfRange() throws IOException {
+        byte[] bytes = encode(album(20));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int offsetsBase = HEADER_SIZE + buffer.getInt(OFFSET_MUSIC_COUNT) * 24;
+        buffer.putInt(offsetsBase, bytes.length - 2);
+
+        assertCorrupt(resign(bytes));
+    }
+
+    @Test
+    public void map_rejectsStringLengthOutOfRange() throws IOException {
+        byte[] bytes = encode(album(20));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int offsetsBase = HEADER_SIZE + buffer.getInt(OFFSET_MUSIC_COUNT) * 24;
+        buffer.putInt(buffer.getInt(offsetsBase), Integer.MAX_VALUE);
+
+        assertCorrupt(resign(bytes));
+    }
+
+    @Test
+    public void map_rejectsTruncatedAndForeignFiles() throws IOException {
+        byte[] bytes = encode(album(20));
+
+        assertCorrupt(Arrays.copyOf(bytes, bytes.length / 2));
+        assertCorrupt(Arrays.copyOf(bytes, 10));
+        assertCorrupt("{\"albumId\":\"001\"}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void catalogCache_treatsUnreadableSnapshotAsMiss() throws IOException {
+        TestAlbum album = album(20);
+        CatalogCache cache = new CatalogCache(mFolder.getRoot(), "album.snapshot");
+        assertTrue(cache.writeIfChanged(album));
+        assertFalse(cache.writeIfChanged(album));
+
+        File file = new File(mFolder.getRoot(), "album.snapshot");
+        Files.write(file.toPath(), Arrays.copyOf(Files.readAllBytes(file.toPath()), 10));
+
+        CatalogCache reopened = new CatalogCache(mFolder.getRoot(), "album.snapshot");
+        assertNull(reopened.read());
+        assertFalse(file.exists());
+        assertTrue(reopened.writeIfChanged(album));
+        assertAlbumEquals(album, reopened.read());
+    }
+
+    @Test
+    public void catalogCache_rewritesCorruptSnapshotOnTheFirstCompare() throws IOException {
+        TestAlbum album = album(20);
+        assertTrue(new CatalogCache(mFolder.getRoot(), "album.snapshot").writeIfChanged(album));
+
+        File file = new File(mFolder.getRoot(), "album.snapshot");
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file.toPath(), bytes);
+
+        // The cold start read doesn't hash the file, the compare with the freshly decoded album does
+        CatalogCache reopened = new CatalogCache(mFolder.getRoot(), "album.snapshot");
+        assertEquals(20, reopened.read().musics.size());
+        assertTrue(reopened.writeIfChanged(album));
+        assertFalse(reopened.writeIfChanged(album));
+        assertAlbumEquals(album, new CatalogCache(mFolder.getRoot(), "album.snapshot").read());
+    }
+
+    @Test
+    public void catalogCache_streamedPagesMatchTheWholeAlbum() throws IOException {
+        TestAlbum album = album(120);
+        CatalogCache cache = new CatalogCache(mFolder.getRoot(), "album.snapshot");
+
+        try (CatalogCache.Update update = cache.update()) {
+            for (int from = 0; from < album.musics.size(); from += 50) {
+                update.addMusics(album.musics.subList(from, Math.min(from + 50, album.musics.size())));
+            }
+            assertTrue(update.commit(new TestAlbum(album.albumId, album.title, album.summary, album.artist,
+                album.coverImg, null)));
+        }
+
+        assertFalse(cache.writeIfChanged(album));
+        assertAlbumEquals(album, new CatalogCache(mFolder.getRoot(), "album.snapshot").read());
+        assertEquals(Arrays.asList("album.snapshot"), Arrays.asList(mFolder.getRoot().list()));
+    }
+
+    @Test
+    public void catalogCache_droppedUpdateKeepsTheCachedAlbum() throws IOException {
+        TestAlbum album = album(20);
+        CatalogCache cache = new CatalogCache(mFolder.getRoot(), "album.snapshot");
+        assertTrue(cache.writeIfChanged(album));
+
+        try (CatalogCache.Update update = cache.update()) {
+            update.addMusics(album(30).musics);
+        }
+
+        assertAlbumEquals(album, cache.read());
+        assertEquals(Arrays.asList("album.snapshot"), Arrays.asList(mFolder.getRoot().list()));
+    }
+
+    /**
+     * Not a pass/fail benchmark beyond size, the timings are printed for comparison across changes.
+     */
+    @Test
+    public void compare_snapshotWithJson() throws IOException {
+        TestAlbum album = album(5000);
+        byte[] json = GsonProvider.get().toJson(album).getBytes(StandardCharsets.UTF_8);
+        byte[] snapshot = encode(album);
+        File file = mFolder.newFile("compare.snapshot");
+        Files.write(file.toPath(), snapshot);
+
+        int rounds = 30;
+        long jsonNanos = Long.MAX_VALUE, coldNanos = Long.MAX_VALUE, firstScreenNanos = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            TestAlbum decoded = GsonProvider.get().fromJson(
+                new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8), TestAlbum.class);
+            for (TestAlbum.TestMusic music : decoded.musics) consume(music);
+            jsonNanos = Math.min(jsonNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            TestAlbum mapped = AlbumSnapshot.map(file).album;
+            for (TestAlbum.TestMusic music : mapped.musics) consume(music);
+            coldNanos = Math.min(coldNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            mapped = AlbumSnapshot.map(file).album;
+            for (int m = 0; m < 12; m++) consume(mapped.musics.get(m));
+            firstScreenNanos = Math.min(firstScreenNanos, System.nanoTime() - start);
+        }
+        System.out.printf("AlbumSnapshot vs JSON, %d musics: json %d bytes %.2f ms, snapshot %d bytes, "
+                + "all rows %.2f ms, first 12 rows %.2f ms%n", album.musics.size(), json.length, jsonNanos / 1e6,
+            snapshot.length, coldNanos / 1e6, firstScreenNanos / 1e6);
+
+        assertTrue(snapshot.length < json.length);
+    }
+
+    private static int sSink;
+
+    private static void consume(TestAlbum.TestMusic music) {
+        sSink += music.title.length() + music.coverImg.length();
+    }
+
+    /**
+     * Streams album through an {@link AlbumSnapshot.Writer} in pages and reads the file back.
+     */
+    private byte[] encode(TestAlbum album) throws IOException {
+        File file = mFolder.newFile();
+        AlbumSnapshot.Writer writer = new AlbumSnapshot.Writer(file, mFolder.newFile());
+        List<TestAlbum.TestMusic> musics = album.musics == null ? new ArrayList<>() : album.musics;
+        for (int from = 0; from < musics.size(); from += 50) {
+            writer.addMusics(musics.subList(from, Math.min(from + 50, musics.size())));
+        }
+        writer.finish(album);
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private AlbumSnapshot.Mapped map(byte[] bytes) throws IOException {
+        File file = mFolder.newFile();
+        Files.write(file.toPath(), bytes);
+        return AlbumSnapshot.map(file, true);
+    }
+
+    private void assertCorrupt(byte[] bytes) throws IOException {
+        try {
+            map(bytes);
+            fail("Corrupt snapshot was mapped");
+        } catch (IOException expected) {
+            // A miss, CatalogCache decodes the album from its source again
+        }
+    }
+
+    /**
+     * Rewrites the digest, so a tampered body gets past the digest check and only the bounds checks are left.
+     */
+    private static byte[] resign(byte[] bytes) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+            md.update(bytes, OFFSET_STRING_COUNT, HEADER_SIZE - OFFSET_STRING_COUNT);
+            System.arraycopy(md.digest(), 0, bytes, OFFSET_DIGEST, 32);
+            return bytes;
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static TestAlbum readAsset() throws IOException {
+        try (Reader reader = new InputStreamReader(
+            new FileInputStream("src/main/assets/free_music.json"), StandardCharsets.UTF_8)) {
+            return GsonProvider.get().fromJson(reader, TestAlbum.class);
+        } catch (FileNotFoundException e) {
+            // Run from the repository root instead of the module
+            try (Reader reader = new InputStreamReader(
+                new FileInputStream("app/src/main/assets/free_music.json"), StandardCharsets.UTF_8)) {
+                return GsonProvider.get().fromJson(reader, TestAlbum.class);
+            }
+        }
+    }
+
+    private static TestAlbum album(int count) {
+        List<TestAlbum.TestMusic> musics = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            musics.add(new TestAlbum.TestMusic(String.valueOf(i),
+                "https://upload-images.jianshu.io/upload_images/57036-" + i + ".png",
+                "https://www.bensound.com/bensound-music/track-" + i + ".mp3",
+                "Track " + i, new TestAlbum.TestArtist("Artist " + i % 7)));
+        }
+        return new TestAlbum("001", "Cute", "BenSound", new TestAlbum.TestArtist("UnKnown"),
+            "https://upload-images.jianshu.io/upload_images/57036-cover.png", musics);
+    }
+
+    private static void assertAlbumEquals(TestAlbum expected, TestAlbum actual) {
+        assertEquals(expected.albumId, actual.albumId);
+        assertEquals(expected.title, actual.title);
+        assertEquals(expected.summary, actual.summary);
+        assertEquals(expected.coverImg, actual.coverImg);
+        assertEquals(name(expected.artist), name(actual.artist));
+        int size = expected.musics == null ? 0 : expected.musics.size();
+        assertEquals(size, actual.musics.size());
+        for (int i = 0; i < size; i++) {
+            TestAlbum.TestMusic e = expected.musics.get(i), a = actual.musics.get(i);
+            assertEquals(e.musicId, a.musicId);
+            assertEquals(e.coverImg, a.coverImg);
+            assertEquals(e.url, a.url);
+            assertEquals(e.title, a.title);
+            assertEquals(name(e.artist), name(a.artist));
+        }
+    }
+
+    private static String name(TestAlbum.TestArtist artist) {
+        return artist == null ? null : artist.name;
+    }
+}
@@ -0,0 +1,115 @@
+package com.kunminx.puremusic.data.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.kunminx.puremusic.data.bean.DownloadState;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.PublishSubject;
+
+/**
+ * Ordering, dedup and cancellation of {@link DownloadScheduler} over a fake transfer.
+ */
+public class DownloadSchedulerTest {
+
+    private final List<String> mStarted = new ArrayList<>();
+    private final Map<String, PublishSubject<DownloadState>> mTransfers = new HashMap<>();
+    private final DownloadScheduler mScheduler = new DownloadScheduler(this::start, 1);
+
+    private Observable<DownloadState> start(String url, File target) {
+        mStarted.add(url);
+        PublishSubject<DownloadState> transfer = PublishSubject.create();
+        mTransfers.put(url, transfer);
+        return transfer;
+    }
+
+    private DownloadScheduler.Handle enqueue(String url, DownloadScheduler.Priority priority) {
+        return mScheduler.enqueue(url, new File("/tmp", url), priority);
+    }
+
+    private void finish(String url) {
+        mTransfers.get(url).onComplete();
+    }
+
+    @Test
+    public void queued_runsByPriorityThenArrival() {
+        enqueue("running", DownloadScheduler.Priority.USER_INITIATED);
+        enqueue("prefetch", DownloadScheduler.Priority.PREFETCH);
+        enqueue("cover", DownloadScheduler.Priority.COVER_ART);
+        enqueue("user", DownloadScheduler.Priority.USER_INITIATED);
+        enqueue("cover2", DownloadScheduler.Priority.COVER_ART);
+
+        finish("running");
+        finish("user");
+        finish("cover");
+        finish("cover2");
+
+        assertEquals(Arrays.asList("running", "user", "cover", "cover2", "prefetch"), mStarted);
+    }
+
+    @Test
+    public void sameUrl_joinsAndRaisesPriority() {
+        enqueue("running", DownloadScheduler.Priority.USER_INITIATED);
+        enqueue("cover", DownloadScheduler.Priority.COVER_ART);
+        enqueue("shared", DownloadScheduler.Priority.PREFETCH);
+        enqueue("shared", DownloadScheduler.Priority.USER_INITIATED);
+
+        finish("running");
+
+        assertEquals(Arrays.asList("running", "shared"), mStarted);
+    }
+
+    @Test
+    public void finished_completesProgress() {
+        TestObserver<DownloadState> progress = enqueue("file", DownloadScheduler.Priority.USER_INITIATED)
+            .progress().test();
+
+        mTransfers.get("file").onNext(new DownloadState(true, 100));
+        finish("file");
+
+        progress.assertComplete();
+        progress.assertValueCount(1);
+    }
+
+    @Test
+    public void cancelled_failsProgressWithCancellation() {
+        DownloadScheduler.Handle first = enqueue("file", DownloadScheduler.Priority.USER_INITIATED);
+        DownloadScheduler.Handle second = enqueue("file", DownloadScheduler.Priority.COVER_ART);
+        TestObserver<DownloadState> progress = second.progress().test();
+
+        first.cancel();
+        progress.assertNotTerminated();
+        assertTrue(mTransfers.get("file").hasObservers());
+
+        second.cancel();
+        progress.assertError(CancellationException.class);
+        assertFalse(mTransfers.get("file").hasObservers());
+    }
+
+    @Test
+    public void cancelledWhileQueued_failsProgressAndFreesTheSlot() {
+        enqueue("running", DownloadScheduler.Priority.USER_INITIATED);
+        DownloadScheduler.Handle queued = enqueue("queued", DownloadScheduler.Priority.COVER_ART);
+        TestObserver<DownloadState> progress = queued.progress().test();
+
+        queued.cancel();
+        finish("running");
+
+        progress.assertError(CancellationException.class);
+        assertEquals(Arrays.asList("running"), mStarted);
+        assertEquals(0, mScheduler.queueState().blockingFirst().queued);
+    }
+}
@@ -0,0 +1,251 @@
+package com.kunminx.puremusic.data.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * Runs FileDownloader against a MockWebServer that serves ranges the way a real server would,
+ * including If-Range against an ETag.
+ */
+public class FileDownloaderTest {
+
+    private static final int SIZE = 4 * 1024 * 1024 + 123;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final RangeDispatcher mDispatcher = new RangeDispatcher();
+    private final OkHttpClient mClient = new OkHttpClient.Builder()
+        .readTimeout(10, TimeUnit.SECONDS)
+        .build();
+    private File mTarget;
+    private String mUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer.setDispatcher(mDispatcher);
+        mServer.start();
+        mUrl = mServer.url("/music.mp3").toString();
+        mTarget = new File(mFolder.getRoot(), "music.mp3");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void download_splitsIntoRangedSegments() throws IOException {
+        mDispatcher.publish(content(1), "\"v1\"");
+
+        new FileDownloader(mClient).newTask(mUrl, mTarget).execute(null);
+
+        assertArrayEquals(mDispatcher.mContent, Files.readAllBytes(mTarget.toPath()));
+        assertEquals(1 + 4, mDispatcher.mRanges.size());
+        assertNoLeftovers();
+    }
+
+    @Test
+    public void rangeNotHonoured_fallsBackToSingleStream() throws IOException {
+        mDispatcher.publish(content(2), "\"v1\"");
+        mDispatcher.mHonourRanges = false;
+
+        new FileDownloader(mClient).newTask(mUrl, mTarget).execute(null);
+
+        assertArrayEquals(mDispatcher.mContent, Files.readAllBytes(mTarget.toPath()));
+        assertNoLeftovers();
+    }
+
+    @Test
+    public void rangeNoLongerHonouredAfterProbe_startsOverWithoutRanges() throws IOException {
+        mDispatcher.publish(content(3), "\"v1\"");
+        mDispatcher.mProbeHook = () -> mDispatcher.mHonourRanges = false;
+
+        new FileDownloader(mClient).newTask(mUrl, mTarget).execute(null);
+
+        assertArrayEquals(mDispatcher.mContent, Files.readAllBytes(mTarget.toPath()));
+        assertNoLeftovers();
+    }
+
+    @Test
+    public void remoteChangedBetweenProbeAndFetch_downloadsNewFile() throws IOException {
+        byte[] changed = content(5);
+        mDispatcher.publish(content(4), "\"v1\"");
+        mDispatcher.mProbeHook = () -> mDispatcher.publish(changed, "\"v2\"");
+
+        new FileDownloader(mClient).newTask(mUrl, mTarget).execute(null);
+
+        assertArrayEquals(changed, Files.readAllBytes(mTarget.toPath()));
+        assertNoLeftovers();
+    }
+
+    @Test
+    public void throttledBodies_segmentsBeatASingleStream() throws IOException {
+        // Each response is throttled on its own, like a server capping every connection
+        mDispatcher.publish(content(9), "\"v1\"");
+        mDispatcher.mThrottle = true;
+
+        mDispatcher.mHonourRanges = false;
+        long single = timeDownload();
+        mDispatcher.mHonourRanges = true;
+        long segmented = timeDownload();
+
+        System.out.printf("FileDownloader throttled: single stream %d ms, segmented %d ms%n", single, segmented);
+        assertTrue("Segmented " + segmented + " ms, single " + single + " ms", segmented * 2 < single);
+    }
+
+    @Test
+    public void resumeAfterKill_fetchesOnlyTheRest() throws Exception {
+        byte[] content = content(6);
+        mDispatcher.publish(content, "\"v1\"");
+        mDispatcher.mThrottle = true;
+
+        FileDownloader.Task killed = new FileDownloader(mClient).newTask(mUrl, mTarget);
+        try {
+            killed.execute((downloaded, total) -> {
+                if (downloaded > SIZE / 3) killed.cancel();
+            });
+            fail("Cancelled download completed");
+        } catch (InterruptedIOException expected) {
+            // Partial file and plan are kept for the next attempt
+        }
+        assertTrue(partFile().isFile());
+        assertTrue(metaFile().isFile());
+
+        mDispatcher.mThrottle = false;
+        mDispatcher.mRanges.clear();
+        new FileDownloader(mClient).newTask(mUrl, mTarget).execute(null);
+
+        assertArrayEquals(content, Files.readAllBytes(mTarget.toPath()));
+        // No new probe, and at least one segment picked up past its start
+        assertFalse(mDispatcher.mRanges.contains("bytes=0-0"));
+        boolean resumedMidSegment = false;
+        for (String range : mDispatcher.mRanges) {
+            long from = Long.parseLong(range.substring("bytes=".length(), range.indexOf('-')));
+            if (from % (SIZE / 4) != 0) resumedMidSegment = true;
+        }
+        assertTrue(mDispatcher.mRanges.toString(), resumedMidSegment);
+        assertNoLeftovers();
+    }
+
+    @Test
+    public void resumeAfterRemoteChanged_discardsStalePlan() throws Exception {
+        mDispatcher.publish(content(7), "\"v1\"");
+        mDispatcher.mThrottle = true;
+
+        FileDownloader.Task killed = new FileDownloader(mClient).newTask(mUrl, mTarget);
+        try {
+            killed.execute((downloaded, total) -> {
+                if (downloaded > SIZE / 3) killed.cancel();
+            });
+            fail("Cancelled download completed");
+        } catch (InterruptedIOException expected) {
+            // Partial file and plan are kept for the next attempt
+        }
+
+        byte[] changed = content(8);
+        mDispatcher.mThrottle = false;
+        mDispatcher.publish(changed, "\"v2\"");
+        new FileDownloader(mClient).newTask(mUrl, mTarget).execute(null);
+
+        assertArrayEquals(changed, Files.readAllBytes(mTarget.toPath()));
+        assertNoLeftovers();
+    }
+
+    private long timeDownload() throws IOException {
+        if (mTarget.exists()) assertTrue(mTarget.delete());
+        long start = System.nanoTime();
+        new FileDownloader(mClient).newTask(mUrl, mTarget).execute(null);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertArrayEquals(mDispatcher.mContent, Files.readAllBytes(mTarget.toPath()));
+        assertNoLeftovers();
+        return elapsed;
+    }
+
+    private void assertNoLeftovers() {
+        assertFalse(partFile().exists());
+        assertFalse(metaFile().exists());
+    }
+
+    private File partFile() {
+        return new File(mTarget.getPath() + ".part");
+    }
+
+    private File metaFile() {
+        return new File(mTarget.getPath() + ".part.meta");
+    }
+
+    private static byte[] content(long seed) {
+        byte[] bytes = new byte[SIZE];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static final class RangeDispatcher extends Dispatcher {
+        final List<String> mRanges = new CopyOnWriteArrayList<>();
+        volatile byte[] mContent;
+        volatile String mETag;
+        volatile boolean mHonourRanges = true;
+        volatile boolean mThrottle;
+        volatile Runnable mProbeHook;
+
+        void publish(byte[] content, String eTag) {
+            mETag = eTag;
+            mContent = content;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            byte[] content = mContent;
+            String eTag = mETag;
+            String range = request.getHeader("Range");
+            String ifRange = request.getHeader("If-Range");
+            MockResponse response;
+            if (range == null || !mHonourRanges || (ifRange != null && !ifRange.equals(eTag))) {
+                response = new MockResponse().setResponseCode(200).setBody(new Buffer().write(content));
+            } else {
+                mRanges.add(range);
+                int dash = range.indexOf('-');
+                int from = Integer.parseInt(range.substring("bytes=".length(), dash));
+                int to = Math.min(Integer.parseInt(range.substring(dash + 1)), content.length - 1);
+                response = new MockResponse().setResponseCode(206)
+                    .setHeader("Content-Range", "bytes " + from + "-" + to + "/" + content.length)
+                    .setBody(new Buffer().write(content, from, to - from + 1));
+            }
+            response.setHeader("ETag", eTag);
+            if (mThrottle) response.throttleBody(64 * 1024, 20, TimeUnit.MILLISECONDS);
+            Runnable hook = mProbeHook;
+            if ("bytes=0-0".equals(range) && hook != null) {
+                mProbeHook = null;
+                hook.run();
+            }
+            return response;
+        }
+    }
+}
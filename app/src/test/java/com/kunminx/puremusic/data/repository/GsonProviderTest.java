@@ -0,0 +1,126 @@
+package com.kunminx.puremusic.data.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+import com.kunminx.puremusic.data.bean.LibraryInfo;
+import com.kunminx.puremusic.data.bean.TestAlbum;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Checks the hand-written adapters of {@link GsonProvider} against reflective Gson on the bundled catalogs,
+ * and measures per-decode latency and allocation of both: a new reflective Gson per call, as DataRepository
+ * used to decode, against the shared Gson.
+ */
+public class GsonProviderTest {
+
+    @Test
+    public void adapters_decodeLikeReflectiveGson() throws IOException {
+        String json = asset("free_music.json");
+
+        TestAlbum expected = new Gson().fromJson(json, TestAlbum.class);
+        TestAlbum actual = GsonProvider.get().fromJson(json, TestAlbum.class);
+
+        assertEquals(expected.albumId, actual.albumId);
+        assertEquals(expected.title, actual.title);
+        assertEquals(expected.summary, actual.summary);
+        assertEquals(expected.coverImg, actual.coverImg);
+        assertEquals(expected.artist.name, actual.artist.name);
+        assertEquals(expected.musics.size(), actual.musics.size());
+        for (int i = 0; i < expected.musics.size(); i++) {
+            TestAlbum.TestMusic e = expected.musics.get(i), a = actual.musics.get(i);
+            assertEquals(e.musicId, a.musicId);
+            assertEquals(e.coverImg, a.coverImg);
+            assertEquals(e.url, a.url);
+            assertEquals(e.title, a.title);
+            assertEquals(e.artist.name, a.artist.name);
+        }
+
+        List<LibraryInfo> library = GsonProvider.get().fromJson(asset("library.json"), GsonProvider.LIBRARY_INFO_LIST);
+        assertEquals(5, library.size());
+        assertEquals("Lifecycle", library.get(0).getTitle());
+    }
+
+    @Test
+    public void adapters_roundTrip() throws IOException {
+        TestAlbum album = GsonProvider.get().fromJson(asset("free_music.json"), TestAlbum.class);
+
+        String json = GsonProvider.get().toJson(album);
+
+        assertEquals(json, GsonProvider.get().toJson(GsonProvider.get().fromJson(json, TestAlbum.class)));
+    }
+
+    /**
+     * Only asserts that the shared Gson allocates less, the numbers are printed for comparison across changes.
+     */
+    @Test
+    public void benchmark_sharedAdaptersAgainstGsonPerCall() throws Exception {
+        String json = asset("free_music.json");
+        int warmup = 2_000, rounds = 5_000;
+
+        Decoder perCall = () -> new Gson().fromJson(json, TestAlbum.class);
+        Decoder shared = () -> GsonProvider.get().fromJson(json, TestAlbum.class);
+        for (int i = 0; i < warmup; i++) {
+            perCall.decode();
+            shared.decode();
+        }
+
+        long[] perCallResult = measure(perCall, rounds);
+        long[] sharedResult = measure(shared, rounds);
+        System.out.printf("Gson decode of free_music.json, per call: new Gson %.1f us %d B, shared %.1f us %d B%n",
+            perCallResult[0] / 1e3, perCallResult[1], sharedResult[0] / 1e3, sharedResult[1]);
+
+        Assume.assumeTrue("Allocation counter not available on this JVM", perCallResult[1] >= 0);
+        assertTrue(sharedResult[1] < perCallResult[1]);
+    }
+
+    /**
+     * @return mean nanos per decode, and mean bytes allocated per decode or -1 if the JVM can't tell
+     */
+    private static long[] measure(Decoder decoder, int rounds) throws Exception {
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) decoder.decode();
+        long nanos = (System.nanoTime() - start) / rounds;
+        long allocatedAfter = allocatedBytes();
+        return new long[]{nanos, allocatedBefore < 0 ? -1 : (allocatedAfter - allocatedBefore) / rounds};
+    }
+
+    /**
+     * Reads com.sun.management.ThreadMXBean reflectively, it is HotSpot specific.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        try {
+            Method method = Class.forName("com.sun.management.ThreadMXBean")
+                .getMethod("getThreadAllocatedBytes", long.class);
+            return (long) method.invoke(bean, Thread.currentThread().getId());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    static String asset(String name) throws IOException {
+        Path path = Paths.get("src/main/assets", name);
+        // Run from the repository root instead of the module
+        if (!Files.exists(path)) path = Paths.get("app/src/main/assets", name);
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    private interface Decoder {
+        Object decode() throws Exception;
+    }
+}
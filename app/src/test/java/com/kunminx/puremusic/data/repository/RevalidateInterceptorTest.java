@@ -0,0 +1,176 @@
+package com.kunminx.puremusic.data.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Runs the API client setup of DataRepository, HTTP cache plus {@link RevalidateInterceptor},
+ * against a MockWebServer that sends validators but no Cache-Control, as the catalog endpoints do.
+ */
+public class RevalidateInterceptorTest {
+
+    private static final int BODY_SIZE = 64 * 1024;
+    private static final int REQUESTS = 20;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final ValidatingDispatcher mDispatcher = new ValidatingDispatcher();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer.setDispatcher(mDispatcher);
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void unchangedBody_isRevalidatedWith304() throws IOException {
+        OkHttpClient client = cachedClient();
+
+        for (int i = 0; i < REQUESTS; i++) assertEquals(BODY_SIZE, get(client).length());
+
+        assertEquals(1, mDispatcher.mFull.get());
+        assertEquals(REQUESTS - 1, mDispatcher.mNotModified.get());
+    }
+
+    @Test
+    public void changedBody_isSeenOnTheNextRequest() throws IOException {
+        OkHttpClient client = cachedClient();
+        get(client);
+
+        mDispatcher.publish('b', "\"v2\"");
+
+        assertEquals('b', get(client).charAt(0));
+        assertEquals(2, mDispatcher.mFull.get());
+    }
+
+    /**
+     * Without the interceptor, Last-Modified alone makes the cache serve the body by heuristic freshness.
+     */
+    @Test
+    public void withoutInterceptor_changedBodyIsServedStale() throws IOException {
+        OkHttpClient client = new OkHttpClient.Builder()
+            .cache(new Cache(mFolder.newFolder("stale"), 10 * 1024 * 1024))
+            .build();
+        get(client);
+
+        mDispatcher.publish('b', "\"v2\"");
+
+        assertEquals('a', get(client).charAt(0));
+        assertEquals(1, mDispatcher.mFull.get());
+    }
+
+    /**
+     * Only asserts that revalidation transfers a fraction of the bytes, the numbers are printed for comparison.
+     */
+    @Test
+    public void benchmark_cachedAgainstUncached() throws IOException {
+        mDispatcher.mThrottle = true;
+
+        long[] uncached = run(new OkHttpClient());
+        long uncachedBytes = mDispatcher.mBodyBytes.getAndSet(0);
+        mDispatcher.mFull.set(0);
+        mDispatcher.mNotModified.set(0);
+        long[] cached = run(cachedClient());
+        long cachedBytes = mDispatcher.mBodyBytes.get();
+
+        System.out.printf("%d GETs of %d KB: uncached %.1f ms mean %d KB sent, cache + revalidate %.1f ms mean "
+                + "%d KB sent (%d x 304), %d of %d requests on a reused connection%n",
+            REQUESTS, BODY_SIZE / 1024, uncached[0] / 1e6, uncachedBytes / 1024, cached[0] / 1e6,
+            cachedBytes / 1024, mDispatcher.mNotModified.get(), cached[1], REQUESTS);
+        assertEquals(REQUESTS - 1, mDispatcher.mNotModified.get());
+        assertTrue(cachedBytes * 10 < uncachedBytes);
+    }
+
+    /**
+     * @return mean nanos per request, and how many requests went over a reused connection
+     */
+    private long[] run(OkHttpClient client) throws IOException {
+        int reusedBefore = mDispatcher.mReused.get();
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) get(client);
+        return new long[]{(System.nanoTime() - start) / REQUESTS, mDispatcher.mReused.get() - reusedBefore};
+    }
+
+    private OkHttpClient cachedClient() throws IOException {
+        return new OkHttpClient.Builder()
+            .cache(new Cache(mFolder.newFolder(), 10 * 1024 * 1024))
+            .addNetworkInterceptor(new RevalidateInterceptor())
+            .build();
+    }
+
+    private String get(OkHttpClient client) throws IOException {
+        Request request = new Request.Builder().url(mServer.url("/free_music")).build();
+        try (Response response = client.newCall(request).execute()) {
+            assertTrue(response.isSuccessful());
+            return response.body().string();
+        }
+    }
+
+    private static final class ValidatingDispatcher extends Dispatcher {
+        final AtomicInteger mFull = new AtomicInteger();
+        final AtomicInteger mNotModified = new AtomicInteger();
+        final AtomicInteger mReused = new AtomicInteger();
+        final AtomicLong mBodyBytes = new AtomicLong();
+        volatile String mBody;
+        volatile String mETag;
+        volatile boolean mThrottle;
+
+        ValidatingDispatcher() {
+            publish('a', "\"v1\"");
+        }
+
+        void publish(char fill, String eTag) {
+            char[] body = new char[BODY_SIZE];
+            Arrays.fill(body, fill);
+            mBody = new String(body);
+            mETag = eTag;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            if (request.getSequenceNumber() > 0) mReused.incrementAndGet();
+            String eTag = mETag;
+            MockResponse response = new MockResponse()
+                .setHeader("ETag", eTag)
+                .setHeader("Last-Modified", "Mon, 01 Jan 2024 00:00:00 GMT");
+            if (eTag.equals(request.getHeader("If-None-Match"))) {
+                mNotModified.incrementAndGet();
+                return response.setResponseCode(304);
+            }
+            mFull.incrementAndGet();
+            mBodyBytes.addAndGet(BODY_SIZE);
+            response.setBody(mBody);
+            // Roughly 1.3 MB/s, a mobile link
+            if (mThrottle) response.throttleBody(16 * 1024, 12, TimeUnit.MILLISECONDS);
+            return response;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.kunminx.puremusic.data.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.subjects.PublishSubject;
+
+/**
+ * Joins, replays and releases of {@link SingleFlight} keys.
+ */
+public class SingleFlightTest {
+
+    private final SingleFlight mSingleFlight = new SingleFlight();
+    private final PublishSubject<String> mUpstream = PublishSubject.create();
+    private final AtomicInteger mCreated = new AtomicInteger();
+    private final AtomicInteger mSubscribed = new AtomicInteger();
+    private final AtomicBoolean mDisposed = new AtomicBoolean();
+
+    private Observable<String> call() {
+        return mSingleFlight.share("key", () -> {
+            mCreated.incrementAndGet();
+            return mUpstream.doOnSubscribe(d -> mSubscribed.incrementAndGet()).doOnDispose(() -> mDisposed.set(true));
+        });
+    }
+
+    @Test
+    public void concurrentCalls_shareOneUpstream() {
+        TestObserver<String> first = call().test();
+        TestObserver<String> second = call().test();
+
+        mUpstream.onNext("cached");
+        mUpstream.onNext("fresh");
+        mUpstream.onComplete();
+
+        assertEquals(1, mCreated.get());
+        assertEquals(1, mSingleFlight.getLaunchedCount());
+        assertEquals(1, mSingleFlight.getDeduplicatedCount());
+        first.assertResult("cached", "fresh");
+        second.assertResult("cached", "fresh");
+    }
+
+    @Test
+    public void lateCall_getsOnlyTheLatestEmission() {
+        TestObserver<String> first = call().test();
+        mUpstream.onNext("cached");
+        mUpstream.onNext("fresh");
+
+        TestObserver<String> late = call().test();
+        mUpstream.onComplete();
+
+        assertEquals(1, mCreated.get());
+        first.assertResult("cached", "fresh");
+        late.assertResult("fresh");
+    }
+
+    @Test
+    public void lateCall_joinsUntilTheLastCallerDisposes() {
+        TestObserver<String> first = call().test();
+        TestObserver<String> second = call().test();
+        first.dispose();
+
+        TestObserver<String> third = call().test();
+        assertEquals(1, mCreated.get());
+        assertFalse(mDisposed.get());
+
+        second.dispose();
+        third.dispose();
+        assertTrue(mDisposed.get());
+
+        call().test();
+        assertEquals(2, mCreated.get());
+        assertEquals(2, mSingleFlight.getLaunchedCount());
+    }
+
+    @Test
+    public void terminatedKey_isReleased() {
+        Disposable first = call().subscribe();
+        mUpstream.onNext("fresh");
+        mUpstream.onComplete();
+        assertTrue(first.isDisposed());
+
+        call().test();
+        assertEquals(2, mCreated.get());
+        assertEquals(0, mSingleFlight.getDeduplicatedCount());
+    }
+
+    @Test
+    public void joinedBeforeCompletion_subscribedAfter_getsTheReplayWithoutRunningAgain() {
+        TestObserver<String> first = call().test();
+        mUpstream.onNext("fresh");
+
+        // A call subscribes to the defer, then to the flight it joined: the upstream completes in between
+        AtomicInteger subscribes = new AtomicInteger();
+        RxJavaPlugins.setOnObservableSubscribe((observable, observer) -> {
+            if (subscribes.incrementAndGet() == 2) mUpstream.onComplete();
+            return observer;
+        });
+        TestObserver<String> late;
+        try {
+            late = call().test();
+        } finally {
+            RxJavaPlugins.reset();
+        }
+
+        first.assertResult("fresh");
+        late.assertResult("fresh");
+        assertEquals(1, mSubscribed.get());
+        assertEquals(1, mSingleFlight.getLaunchedCount());
+        assertEquals(1, mSingleFlight.getDeduplicatedCount());
+
+        call().test();
+        assertEquals(2, mSubscribed.get());
+        assertEquals(2, mSingleFlight.getLaunchedCount());
+    }
+}
@@ -2,37 +2,162 @@ package com.kunminx.architecture.domain.request;
 
 import android.annotation.SuppressLint;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
+import io.reactivex.FlowableOperator;
+import io.reactivex.FlowableSubscriber;
 import io.reactivex.Observable;
 import io.reactivex.ObservableEmitter;
-import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.ObservableOperator;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.Scheduler;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.annotations.NonNull;
+import io.reactivex.annotations.Nullable;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Cancellable;
 import io.reactivex.schedulers.Schedulers;
 
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
 /**
  * Create by KunMinX at 2022/6/14
+ * <p>
+ * doIO / doCalculate run on the io / computation pool and deliver on the main thread.
+ * {@link #doOn} picks the scheduler profile, {@link #doInBackground} skips the main-thread hop for work
+ * that is chained further, and {@link #batchOnMain} hands high-frequency emissions to the main thread
+ * in batches, one looper message per window instead of one per item.
+ * <p>
+ * flowIO / flowOn are the {@link Flowable} counterparts, for producers that can outrun
+ * the main thread: what happens to items the subscriber hasn't asked for yet is set by {@link Backpressure}.
  */
 public class AsyncTask {
 
+  /**
+   * One frame at 60fps
+   */
+  public static final long FRAME_WINDOW_MS = 16;
+
   @SuppressLint("CheckResult")
   public static <T> Observable<T> doIO(Action<T> start) {
-    return Observable.create(start::onEmit)
-            .subscribeOn(Schedulers.io())
-            .observeOn(AndroidSchedulers.mainThread());
+    return doOn(io(), start);
   }
 
   @SuppressLint("CheckResult")
   public static <T> Observable<T> doCalculate(Action<T> start) {
+    return doOn(cpu(), start);
+  }
+
+  /**
+   * Runs start on scheduler, one of the profiles below or any other, and delivers on the main thread.
+   */
+  @SuppressLint("CheckResult")
+  public static <T> Observable<T> doOn(Scheduler scheduler, Action<T> start) {
+    return doInBackground(scheduler, start)
+            .observeOn(AndroidSchedulers.mainThread());
+  }
+
+  /**
+   * Runs start on scheduler and delivers on that thread too, for chained work that would otherwise
+   * hop to the main thread and straight back.
+   */
+  @SuppressLint("CheckResult")
+  public static <T> Observable<T> doInBackground(Scheduler scheduler, Action<T> start) {
     return Observable.create(start::onEmit)
-            .subscribeOn(Schedulers.computation())
+            .subscribeOn(scheduler);
+  }
+
+  public static <T> Flowable<T> flowIO(Backpressure backpressure, FlowableAction<T> start) {
+    return flowOn(io(), backpressure, start);
+  }
+
+  /**
+   * Backpressured {@link #doOn}: runs start on scheduler and delivers on the main thread,
+   * holding at most the main thread's prefetch of items in between, see {@link Backpressure}.
+   */
+  public static <T> Flowable<T> flowOn(Scheduler scheduler, Backpressure backpressure, FlowableAction<T> start) {
+    Flowable<T> flowable = backpressure != Backpressure.BUFFER
+            ? Flowable.create(start::onEmit, backpressure.mStrategy)
+            : Flowable.defer(() -> {
+              DemandSignal<T> signal = new DemandSignal<>();
+              return Flowable.<T>create(emitter -> start.onEmit(new DemandPacedEmitter<>(emitter, signal)),
+                      backpressure.mStrategy).lift(signal);
+            });
+    // Requests must reach a paced producer directly, its worker is the very thread waiting for them
+    return flowable.subscribeOn(scheduler, false)
             .observeOn(AndroidSchedulers.mainThread());
   }
 
+  /**
+   * Blocking IO, unbounded pool.
+   */
+  public static Scheduler io() {
+    return Schedulers.io();
+  }
+
+  /**
+   * CPU bound work, one thread per core.
+   */
+  public static Scheduler cpu() {
+    return Schedulers.computation();
+  }
+
+  /**
+   * {@link #batchOnMain(long)} over one frame.
+   */
+  public static <T> ObservableTransformer<T, List<T>> batchOnMain() {
+    return batchOnMain(FRAME_WINDOW_MS);
+  }
+
+  /**
+   * Replaces observeOn(mainThread) for high-frequency producers: emissions arriving within windowMs
+   * of the first pending one are delivered together as one list, in one main-looper message.
+   * Nothing is posted while the upstream is idle, terminal events flush right away.
+   */
+  public static <T> ObservableTransformer<T, List<T>> batchOnMain(long windowMs) {
+    return upstream -> upstream.lift((ObservableOperator<List<T>, T>) downstream ->
+            new MainBatchObserver<>(downstream, windowMs));
+  }
+
   public interface Action<T> {
     void onEmit(ObservableEmitter<T> emitter);
   }
 
+  public interface FlowableAction<T> {
+    void onEmit(FlowableEmitter<T> emitter);
+  }
+
+  /**
+   * What a Flowable producer does with items the subscriber hasn't requested yet.
+   */
+  public enum Backpressure {
+    /**
+     * Nothing is lost: the producer waits in onNext until there is demand, so the buffer stays bounded
+     * by the subscriber's prefetch instead of growing with the producer's lead. For work that can pause, e.g. parsing.
+     */
+    BUFFER(BackpressureStrategy.BUFFER),
+    /**
+     * Items without demand are dropped, for samples where any one will do.
+     */
+    DROP(BackpressureStrategy.DROP),
+    /**
+     * Only the latest item without demand is kept, for state where only the current value matters, e.g. progress.
+     */
+    LATEST(BackpressureStrategy.LATEST);
+
+    private final BackpressureStrategy mStrategy;
+
+    Backpressure(BackpressureStrategy strategy) {
+      mStrategy = strategy;
+    }
+  }
+
   public interface Observer<T> extends io.reactivex.Observer<T> {
     default void onSubscribe(@NonNull Disposable d) {
     }
@@ -45,4 +170,209 @@ public class AsyncTask {
     default void onComplete() {
     }
   }
+
+  /**
+   * Makes the producer wait in onNext while the subscriber has no outstanding demand.
+   * Waiting blocks the producing thread, which is why it is only used on io / computation work.
+   */
+  private static final class DemandPacedEmitter<T> implements FlowableEmitter<T> {
+    private final FlowableEmitter<T> mEmitter;
+    private final DemandSignal<T> mSignal;
+
+    DemandPacedEmitter(FlowableEmitter<T> emitter, DemandSignal<T> signal) {
+      mEmitter = emitter;
+      mSignal = signal;
+    }
+
+    @Override
+    public void onNext(@NonNull T value) {
+      mSignal.awaitDemand(mEmitter);
+      mEmitter.onNext(value);
+    }
+
+    @Override
+    public void onError(@NonNull Throwable error) {
+      mEmitter.onError(error);
+    }
+
+    @Override
+    public void onComplete() {
+      mEmitter.onComplete();
+    }
+
+    @Override
+    public void setDisposable(@Nullable Disposable d) {
+      mEmitter.setDisposable(d);
+    }
+
+    @Override
+    public void setCancellable(@Nullable Cancellable c) {
+      mEmitter.setCancellable(c);
+    }
+
+    @Override
+    public long requested() {
+      return mEmitter.requested();
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return mEmitter.isCancelled();
+    }
+
+    @NonNull
+    @Override
+    public FlowableEmitter<T> serialize() {
+      return new DemandPacedEmitter<>(mEmitter.serialize(), mSignal);
+    }
+
+    @Override
+    public boolean tryOnError(@NonNull Throwable t) {
+      return mEmitter.tryOnError(t);
+    }
+  }
+
+  /**
+   * Wakes a waiting {@link DemandPacedEmitter} when the subscriber requests more or cancels.
+   * Lifted right onto the create, so the emitter's requested count is already raised when the waiter wakes.
+   */
+  private static final class DemandSignal<T> implements FlowableOperator<T, T> {
+
+    synchronized void awaitDemand(FlowableEmitter<?> emitter) {
+      while (emitter.requested() == 0 && !emitter.isCancelled()) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+
+    private synchronized void signal() {
+      notifyAll();
+    }
+
+    @Override
+    public Subscriber<? super T> apply(@NonNull Subscriber<? super T> downstream) {
+      return new FlowableSubscriber<T>() {
+        @Override
+        public void onSubscribe(@NonNull Subscription upstream) {
+          downstream.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+              upstream.request(n);
+              signal();
+            }
+
+            @Override
+            public void cancel() {
+              upstream.cancel();
+              signal();
+            }
+          });
+        }
+
+        @Override
+        public void onNext(T t) {
+          downstream.onNext(t);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+          downstream.onError(t);
+        }
+
+        @Override
+        public void onComplete() {
+          downstream.onComplete();
+        }
+      };
+    }
+  }
+
+  private static final class MainBatchObserver<T> implements io.reactivex.Observer<T>, Disposable, Runnable {
+    private final Scheduler.Worker mMain = AndroidSchedulers.mainThread().createWorker();
+    private final io.reactivex.Observer<? super List<T>> mDownstream;
+    private final long mWindowMs;
+    private Disposable mUpstream;
+    private List<T> mPending = new ArrayList<>();
+    private boolean mScheduled;
+    private boolean mDone;
+    private Throwable mError;
+    private volatile boolean mDisposed;
+
+    MainBatchObserver(io.reactivex.Observer<? super List<T>> downstream, long windowMs) {
+      mDownstream = downstream;
+      mWindowMs = windowMs;
+    }
+
+    @Override
+    public void onSubscribe(@NonNull Disposable d) {
+      mUpstream = d;
+      mDownstream.onSubscribe(this);
+    }
+
+    @Override
+    public void onNext(@NonNull T t) {
+      synchronized (this) {
+        mPending.add(t);
+        if (mScheduled) return;
+        mScheduled = true;
+      }
+      mMain.schedule(this, mWindowMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onError(@NonNull Throwable e) {
+      synchronized (this) {
+        mError = e;
+        mDone = true;
+      }
+      mMain.schedule(this);
+    }
+
+    @Override
+    public void onComplete() {
+      synchronized (this) {
+        mDone = true;
+      }
+      mMain.schedule(this);
+    }
+
+    @Override
+    public void run() {
+      List<T> batch;
+      boolean done;
+      Throwable error;
+      synchronized (this) {
+        batch = mPending;
+        mPending = new ArrayList<>();
+        mScheduled = false;
+        done = mDone;
+        error = mError;
+      }
+      if (mDisposed) return;
+      if (!batch.isEmpty()) mDownstream.onNext(batch);
+      if (done) {
+        // Also drops the window still pending, if the terminal event cut it short
+        mDisposed = true;
+        mMain.dispose();
+        if (error != null) mDownstream.onError(error);
+        else mDownstream.onComplete();
+      }
+    }
+
+    @Override
+    public void dispose() {
+      mDisposed = true;
+      mUpstream.dispose();
+      mMain.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+      return mDisposed;
+    }
+  }
 }
@@ -0,0 +1,61 @@
+package com.kunminx.architecture.domain.request;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Holds the subscriptions of a domain layer component, so none outlives it.
+ * <p>
+ * {@link Requester} owns one and clears it in onCleared, components that can't extend Requester,
+ * e.g. an MviDispatcher, hold one of their own and clear it the same way.
+ * {@link #clearOn} additionally clears it whenever a page reaches a lifecycle event,
+ * which stops in-flight requests that only that page was waiting for.
+ */
+public final class DisposableRegistry {
+
+    private final CompositeDisposable mDisposables = new CompositeDisposable();
+
+    /**
+     * @return disposable, so a subscribe call can be wrapped in place
+     */
+    public <T extends Disposable> T add(@NonNull T disposable) {
+        mDisposables.add(disposable);
+        return disposable;
+    }
+
+    /**
+     * Forgets a finished subscription without disposing it, so its observer is no longer retained.
+     */
+    public void remove(@NonNull Disposable disposable) {
+        mDisposables.delete(disposable);
+    }
+
+    /**
+     * Disposes every subscription added so far, the registry stays usable.
+     */
+    public void clear() {
+        mDisposables.clear();
+    }
+
+    public int size() {
+        return mDisposables.size();
+    }
+
+    /**
+     * Clears the registry each time owner reaches event, until owner is destroyed. Call on the main thread.
+     */
+    public void clearOn(@NonNull LifecycleOwner owner, @NonNull Lifecycle.Event event) {
+        owner.getLifecycle().addObserver(new LifecycleEventObserver() {
+            @Override
+            public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event e) {
+                if (e == event) clear();
+                if (e == Lifecycle.Event.ON_DESTROY) source.getLifecycle().removeObserver(this);
+            }
+        });
+    }
+}
@@ -1,6 +1,11 @@
 package com.kunminx.architecture.domain.request;
 
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.ViewModel;
+
+import io.reactivex.disposables.Disposable;
 /**
  * TODO tip 1：
  * 基于单一职责原则，抽取 Jetpack ViewModel "作用域管理" 的能力作为 "领域层组件"，
@@ -43,8 +48,51 @@ import androidx.lifecycle.ViewModel;
  * 如这么说无体会，详见《Jetpack MVVM 分层设计解析》解析
  * https://xiaozhuanlan.com/topic/6741932805
  *
+ * TODO tip 4：订阅登记到 Requester，随作用域一起释放
+ * 通过 addDisposable 登记的订阅，在 onCleared 时统一 dispose，
+ * 页面销毁后不再有请求占着线程、连接和结果对象，
+ * 如只需在某个页面停止时取消，可调用 clearDisposablesOn(owner, Lifecycle.Event.ON_STOP)
+ *
  * Create by KunMinX at 2023/6/5
  */
 public class Requester extends ViewModel {
 
+    private final DisposableRegistry mDisposables = new DisposableRegistry();
+
+    /**
+     * Registers a subscription to be disposed with this Requester.
+     *
+     * @return disposable, so a subscribe call can be wrapped in place
+     */
+    protected <T extends Disposable> T addDisposable(@NonNull T disposable) {
+        return mDisposables.add(disposable);
+    }
+
+    /**
+     * Forgets a finished subscription without disposing it.
+     */
+    protected void removeDisposable(@NonNull Disposable disposable) {
+        mDisposables.remove(disposable);
+    }
+
+    /**
+     * Disposes every subscription registered so far.
+     */
+    protected void clearDisposables() {
+        mDisposables.clear();
+    }
+
+    /**
+     * Also disposes the registered subscriptions each time owner reaches event, e.g. ON_STOP of the page
+     * that alone waits for them. Call on the main thread.
+     */
+    public void clearDisposablesOn(@NonNull LifecycleOwner owner, @NonNull Lifecycle.Event event) {
+        mDisposables.clearOn(owner, event);
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        mDisposables.clear();
+    }
 }
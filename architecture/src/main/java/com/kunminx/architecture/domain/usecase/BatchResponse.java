@@ -0,0 +1,63 @@
+package com.kunminx.architecture.domain.usecase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Aggregated result of {@link UseCaseHandler#executeBatch}, one slot per request value, in request order.
+ * A slot either holds the last response its UseCase reported or the error that kept it from reporting one.
+ *
+ * @param <R> the response type of the batched UseCase
+ */
+public final class BatchResponse<R extends UseCase.ResponseValue> implements UseCase.ResponseValue {
+
+    private final List<R> mResponses;
+    private final List<Throwable> mErrors;
+    private final int mFailedCount;
+
+    BatchResponse(List<R> responses, List<Throwable> errors) {
+        mResponses = Collections.unmodifiableList(new ArrayList<>(responses));
+        mErrors = Collections.unmodifiableList(new ArrayList<>(errors));
+        int failed = 0;
+        for (Throwable error : errors) if (error != null) failed++;
+        mFailedCount = failed;
+    }
+
+    public int size() {
+        return mResponses.size();
+    }
+
+    /**
+     * @return response of the index-th request value, null if it failed
+     */
+    public R getResponse(int index) {
+        return mResponses.get(index);
+    }
+
+    public List<R> getResponses() {
+        return mResponses;
+    }
+
+    public boolean isSuccess(int index) {
+        return mErrors.get(index) == null;
+    }
+
+    /**
+     * @return why the index-th request value has no response, null if it succeeded
+     */
+    public Throwable getError(int index) {
+        return mErrors.get(index);
+    }
+
+    public int getFailedCount() {
+        return mFailedCount;
+    }
+
+    /**
+     * @return whether every request value got a response
+     */
+    public boolean isComplete() {
+        return mFailedCount == 0;
+    }
+}
@@ -0,0 +1,115 @@
+package com.kunminx.architecture.domain.usecase;
+
+import com.kunminx.architecture.data.response.ResultSource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops calling an endpoint that keeps failing.
+ * <p>
+ * After failureThreshold failures in a row the circuit opens and invocations fail right away with
+ * {@link OpenException}, without taking a worker. Once openMillis have passed, a single trial invocation
+ * is let through: its success closes the circuit again, its failure keeps it open for another period.
+ * <p>
+ * UseCases opt in by returning a key from {@link UseCase#getCircuitKey}, e.g. the host they call;
+ * every UseCase using the same key shares one breaker.
+ */
+public final class CircuitBreaker {
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MILLIS = 30_000;
+
+    private static final Map<String, CircuitBreaker> BREAKERS = new HashMap<>();
+
+    private final String mKey;
+    private final int mFailureThreshold;
+    private final long mOpenNanos;
+    private int mFailures;
+    private long mOpenedAt;
+    private boolean mOpen;
+    private boolean mTrialInFlight;
+
+    public CircuitBreaker(String key, int failureThreshold, long openMillis) {
+        mKey = key;
+        mFailureThreshold = failureThreshold;
+        mOpenNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * @return the shared breaker of key, created with the default threshold and open period
+     */
+    public static CircuitBreaker forKey(String key) {
+        synchronized (BREAKERS) {
+            CircuitBreaker breaker = BREAKERS.get(key);
+            if (breaker == null) {
+                breaker = new CircuitBreaker(key, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+                BREAKERS.put(key, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * Registers a breaker with its own threshold and open period for key, replacing the shared one.
+     */
+    public static void register(CircuitBreaker breaker) {
+        synchronized (BREAKERS) {
+            BREAKERS.put(breaker.mKey, breaker);
+        }
+    }
+
+    /**
+     * @return whether invocations are currently refused, without claiming the trial
+     */
+    public synchronized boolean isOpen() {
+        return mOpen && (mTrialInFlight || System.nanoTime() - mOpenedAt < mOpenNanos);
+    }
+
+    /**
+     * @return whether an invocation may go ahead, every true must be followed by
+     * {@link #onSuccess()}, {@link #onFailure()} or {@link #onAbandoned()}
+     */
+    synchronized boolean tryAcquire() {
+        if (!mOpen) return true;
+        if (mTrialInFlight || System.nanoTime() - mOpenedAt < mOpenNanos) return false;
+        mTrialInFlight = true;
+        return true;
+    }
+
+    synchronized void onSuccess() {
+        mFailures = 0;
+        mOpen = false;
+        mTrialInFlight = false;
+    }
+
+    synchronized void onFailure() {
+        mFailures++;
+        if (mTrialInFlight || mFailures >= mFailureThreshold) {
+            mOpen = true;
+            mOpenedAt = System.nanoTime();
+        }
+        mTrialInFlight = false;
+    }
+
+    /**
+     * The invocation was cancelled, it proves nothing either way.
+     */
+    synchronized void onAbandoned() {
+        mTrialInFlight = false;
+    }
+
+    OpenException newOpenException() {
+        return new OpenException(mKey);
+    }
+
+    /**
+     * Reported instead of running an invocation while its circuit is open. Never retried.
+     */
+    public static final class OpenException extends UseCaseException {
+        OpenException(String key) {
+            super("Circuit open for " + key, null, ResultSource.NETWORK);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.kunminx.architecture.domain.usecase;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Where a {@link UseCaseScheduler} delivers responses.
+ * <p>
+ * On device that is the main looper, off-device (unit tests, load tests on the JVM) any executor will do,
+ * e.g. {@link #IMMEDIATE} or a single thread standing in for the main thread.
+ */
+public interface MainThreadDispatcher {
+
+    /**
+     * Runs responses on the thread that produced them.
+     */
+    MainThreadDispatcher IMMEDIATE = Runnable::run;
+
+    void dispatch(Runnable runnable);
+
+    /**
+     * Posts to the main looper, only usable on device.
+     */
+    static MainThreadDispatcher android() {
+        Handler handler = new Handler(Looper.getMainLooper());
+        return handler::post;
+    }
+
+    static MainThreadDispatcher from(Executor executor) {
+        return executor::execute;
+    }
+}
@@ -0,0 +1,75 @@
+package com.kunminx.architecture.domain.usecase;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a {@link UseCase} type retries a failed invocation, declared by overriding {@link UseCase#getRetryPolicy()}.
+ * <p>
+ * Attempt n (from 1) waits min(maxDelay, baseDelay * 2^(n-1)) before retrying, minus a random share of up to
+ * jitter of it, so callers that failed together don't retry together. The wait runs on a timer without holding
+ * a worker, the retry is then scheduled like a new invocation; cancelling the task cancels the wait.
+ */
+public final class RetryPolicy {
+
+    /**
+     * Never retries, the default of every UseCase.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, 0, e -> false);
+
+    /**
+     * Decides whether a failure is worth another attempt.
+     */
+    public interface Condition {
+
+        /**
+         * Retries IO failures, the usual sign of a flaky network.
+         */
+        Condition IO = e -> e.getCause() instanceof IOException;
+
+        boolean shouldRetry(UseCaseException error);
+    }
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final double mJitter;
+    private final Condition mCondition;
+
+    /**
+     * @param maxAttempts attempts in total, the first one included
+     * @param jitter      share of each delay that is randomized, between 0 and 1
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, double jitter, Condition condition) {
+        mMaxAttempts = Math.max(1, maxAttempts);
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mJitter = Math.min(1, Math.max(0, jitter));
+        mCondition = condition;
+    }
+
+    /**
+     * Exponential backoff with half of each delay randomized, retrying IO failures.
+     */
+    public static RetryPolicy exponential(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        return new RetryPolicy(maxAttempts, baseDelayMillis, maxDelayMillis, 0.5, Condition.IO);
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    boolean shouldRetry(int attempt, UseCaseException error) {
+        return attempt < mMaxAttempts && !(error instanceof CircuitBreaker.OpenException)
+            && mCondition.shouldRetry(error);
+    }
+
+    /**
+     * @param attempt the attempt that just failed, from 1
+     */
+    long delayMillis(int attempt) {
+        long delay = mBaseDelayMillis << Math.min(attempt - 1, 30);
+        if (delay < 0 || delay > mMaxDelayMillis) delay = mMaxDelayMillis;
+        return delay - (long) (delay * mJitter * ThreadLocalRandom.current().nextDouble());
+    }
+}
@@ -0,0 +1,125 @@
+package com.kunminx.architecture.domain.usecase;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-task timings of a {@link UseCaseScheduler}: how long tasks waited in the queue,
+ * how long they ran, and how many were rejected because the scheduler was saturated.
+ */
+public class SchedulerStats {
+
+    private final Histogram mQueueWait = new Histogram();
+    private final Histogram mRunTime = new Histogram();
+    private final AtomicLong mRejected = new AtomicLong();
+
+    public Histogram getQueueWait() {
+        return mQueueWait;
+    }
+
+    public Histogram getRunTime() {
+        return mRunTime;
+    }
+
+    public long getRejectedCount() {
+        return mRejected.get();
+    }
+
+    void recordRejected() {
+        mRejected.incrementAndGet();
+    }
+
+    /**
+     * Wraps a task so that its queue wait is measured from now and its run time when it runs.
+     * A {@link UseCaseScheduler.Rejectable} task stays rejectable.
+     */
+    Runnable timed(Runnable runnable) {
+        long enqueuedAt = System.nanoTime();
+        Runnable timed = () -> {
+            long startedAt = System.nanoTime();
+            mQueueWait.record(startedAt - enqueuedAt);
+            try {
+                runnable.run();
+            } finally {
+                mRunTime.record(System.nanoTime() - startedAt);
+            }
+        };
+        if (!(runnable instanceof UseCaseScheduler.Rejectable)) return timed;
+        UseCaseScheduler.Rejectable rejectable = (UseCaseScheduler.Rejectable) runnable;
+        return new UseCaseScheduler.Rejectable() {
+            @Override
+            public void run() {
+                timed.run();
+            }
+
+            @Override
+            public void reject(RejectedExecutionException e) {
+                rejectable.reject(e);
+            }
+        };
+    }
+
+    /**
+     * Lock-free histogram with power-of-two millisecond buckets:
+     * bucket 0 holds samples under 1ms, bucket i holds [2^(i-1), 2^i) ms, the last bucket holds everything above.
+     */
+    public static final class Histogram {
+        public static final int BUCKETS = 18;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mTotalNanos = new AtomicLong();
+        private final AtomicLong mMaxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long millis = nanos / 1_000_000;
+            int bucket = millis == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+            mBuckets.incrementAndGet(bucket);
+            mCount.incrementAndGet();
+            mTotalNanos.addAndGet(nanos);
+            long max;
+            while ((max = mMaxNanos.get()) < nanos && !mMaxNanos.compareAndSet(max, nanos)) ;
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getBucketCount(int bucket) {
+            return mBuckets.get(bucket);
+        }
+
+        /**
+         * @return exclusive upper bound of the bucket in ms, or Long.MAX_VALUE for the last one
+         */
+        public static long getBucketUpperBoundMillis(int bucket) {
+            return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+        }
+
+        public double getMeanMillis() {
+            long count = mCount.get();
+            return count == 0 ? 0 : mTotalNanos.get() / 1e6 / count;
+        }
+
+        public double getMaxMillis() {
+            return mMaxNanos.get() / 1e6;
+        }
+
+        /**
+         * @param percentile between 0 and 1
+         * @return upper bound of the bucket the percentile falls in, in ms
+         */
+        public long getPercentileMillis(double percentile) {
+            long count = mCount.get();
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= rank) return getBucketUpperBoundMillis(i);
+            }
+            return getBucketUpperBoundMillis(BUCKETS - 1);
+        }
+    }
+}
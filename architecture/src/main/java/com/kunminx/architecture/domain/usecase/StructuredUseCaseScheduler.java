@@ -0,0 +1,259 @@
+package com.kunminx.architecture.domain.usecase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link UseCaseScheduler} over any {@link ExecutorService}, delivering through a {@link MainThreadDispatcher}.
+ * <p>
+ * By default it runs on {@link UseCaseExecutors#newDefault()}, virtual threads on the JVM and a work-stealing pool
+ * on device, which lets the whole domain layer run and be load-tested off-device:
+ * <pre>
+ * UseCaseHandler handler = new UseCaseHandler(new StructuredUseCaseScheduler(MainThreadDispatcher.IMMEDIATE));
+ * </pre>
+ * Besides plain execution it offers structured fan-out through {@link #openScope(long, TimeUnit)}:
+ * children forked in a scope never outlive it, and inherit the tighter of its deadline and their parent's.
+ */
+public class StructuredUseCaseScheduler implements UseCaseScheduler {
+
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private final ExecutorService mExecutor;
+    private final MainThreadDispatcher mDispatcher;
+    private final SchedulerStats mStats = new SchedulerStats();
+
+    public StructuredUseCaseScheduler(MainThreadDispatcher dispatcher) {
+        this(UseCaseExecutors.newDefault(), dispatcher);
+    }
+
+    public StructuredUseCaseScheduler(ExecutorService executor, MainThreadDispatcher dispatcher) {
+        mExecutor = executor;
+        mDispatcher = dispatcher;
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        try {
+            mExecutor.execute(mStats.timed(runnable));
+        } catch (RejectedExecutionException e) {
+            mStats.recordRejected();
+            UseCaseThreadPoolScheduler.reject(runnable, e);
+        }
+    }
+
+    @Override
+    public <V extends UseCase.ResponseValue> void notifyResponse(final V response,
+                                                                 final UseCase.UseCaseCallback<V> useCaseCallback) {
+        mDispatcher.dispatch(() -> {
+            if (null != useCaseCallback) {
+                useCaseCallback.onSuccess(response);
+            }
+        });
+    }
+
+    @Override
+    public <V extends UseCase.ResponseValue> void onError(final UseCaseException error,
+                                                          final UseCase.UseCaseCallback<V> useCaseCallback) {
+        mDispatcher.dispatch(() -> useCaseCallback.onError(error));
+    }
+
+    @Override
+    public SchedulerStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Opens a scope for forking children, to be used with try-with-resources on a worker thread.
+     * Its deadline is timeout from now, or the deadline of the enclosing scope if that comes first.
+     */
+    public Scope openScope(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Long inherited = DEADLINE.get();
+        if (inherited != null && inherited - deadline < 0) deadline = inherited;
+        return new Scope(deadline);
+    }
+
+    /**
+     * Time left until the deadline of the scope the current thread runs in, so IO can be bounded by it.
+     *
+     * @return remaining milliseconds, or Long.MAX_VALUE outside any scope
+     */
+    public static long remainingMillis() {
+        Long deadline = DEADLINE.get();
+        if (deadline == null) return Long.MAX_VALUE;
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    /**
+     * Fan-out/fan-in of child work under one deadline.
+     * The first failure, or the deadline, cancels every child still running;
+     * closing the scope cancels whatever was not joined.
+     */
+    public final class Scope implements AutoCloseable {
+
+        private final long mDeadline;
+        private final List<Child<?>> mChildren = new ArrayList<>();
+        private final LinkedBlockingQueue<Child<?>> mCompleted = new LinkedBlockingQueue<>();
+
+        private Scope(long deadline) {
+            mDeadline = deadline;
+        }
+
+        public <T> Future<T> fork(Callable<T> callable) {
+            return start(new Child<>(callable, null));
+        }
+
+        /**
+         * Runs a child UseCase on a worker. Its future holds the last response it reported,
+         * or fails with the {@link UseCaseException} it reported, or if it reported none at all. Cancelling the future cancels the UseCase.
+         * The future is settled when the invocation ends, so a UseCase reporting from another thread, see {@link UseCaseTask#defer()},
+         * and a retry waiting for its backoff don't hold a worker meanwhile.
+         */
+        public <Q extends UseCase.RequestValues, P extends UseCase.ResponseValue> Future<P> fork(
+            UseCase<Q, P> useCase, Q requestValues) {
+            Object[] result = new Object[1];
+            UseCaseException[] error = new UseCaseException[1];
+            UseCaseTask<P> task = new UseCaseTask<>(null, new UseCase.UseCaseCallback<P>() {
+                @Override
+                public void onSuccess(P response) {
+                    result[0] = response;
+                }
+
+                @Override
+                public void onError(UseCaseException e) {
+                    error[0] = e;
+                }
+            });
+            UseCaseChild<P> child = new UseCaseChild<>(task,
+                () -> task.run(useCase, requestValues, StructuredUseCaseScheduler.this));
+            task.whenDone(() -> {
+                if (task.isCancelled()) {
+                    child.cancel(false);
+                } else if (task.getThrown() != null) {
+                    child.settle(null, task.getThrown());
+                } else if (error[0] != null) {
+                    child.settle(null, error[0]);
+                } else if (result[0] == null) {
+                    child.settle(null, new IllegalStateException(useCase.getClass().getSimpleName() + " reported no response"));
+                } else {
+                    //noinspection unchecked
+                    child.settle((P) result[0], null);
+                }
+            });
+            return start(child);
+        }
+
+        private <T> Future<T> start(Child<T> child) {
+            mChildren.add(child);
+            execute(child);
+            return child;
+        }
+
+        /**
+         * Waits for every child forked so far.
+         *
+         * @throws ExecutionException with the first child failure, the other children are cancelled
+         * @throws TimeoutException   when the deadline passes first, all children are cancelled
+         */
+        public void join() throws InterruptedException, ExecutionException, TimeoutException {
+            int pending = 0;
+            for (Child<?> child : mChildren) if (!child.mJoined) pending++;
+            try {
+                while (pending > 0) {
+                    long remaining = mDeadline - System.nanoTime();
+                    Child<?> child = remaining > 0 ? mCompleted.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (child == null) throw new TimeoutException("Scope deadline passed with " + pending + " children running");
+                    if (child.mJoined) continue;
+                    child.mJoined = true;
+                    pending--;
+                    if (!child.isCancelled()) child.get();
+                }
+            } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                cancelAll();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            cancelAll();
+        }
+
+        private void cancelAll() {
+            for (Child<?> child : mChildren) child.cancel(true);
+        }
+
+        private <T> T callInScope(Callable<T> callable) throws Exception {
+            Long outer = DEADLINE.get();
+            DEADLINE.set(mDeadline);
+            try {
+                return callable.call();
+            } finally {
+                if (outer == null) DEADLINE.remove();
+                else DEADLINE.set(outer);
+            }
+        }
+
+        private class Child<T> extends FutureTask<T> {
+            private final UseCaseTask<?> mUseCaseTask;
+            boolean mJoined;
+
+            Child(Callable<T> callable, UseCaseTask<?> useCaseTask) {
+                super(() -> callInScope(callable));
+                mUseCaseTask = useCaseTask;
+            }
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                // Settle the future first, the UseCase may return as soon as it sees the cancel
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (mUseCaseTask != null) mUseCaseTask.cancel();
+                return cancelled;
+            }
+
+            @Override
+            protected void done() {
+                mCompleted.offer(this);
+            }
+        }
+
+        /**
+         * A child settled by its UseCase's invocation ending rather than by its worker returning.
+         */
+        private final class UseCaseChild<T> extends Child<T> {
+            private final Runnable mStart;
+
+            UseCaseChild(UseCaseTask<?> useCaseTask, Runnable start) {
+                super(() -> null, useCaseTask);
+                mStart = start;
+            }
+
+            @Override
+            public void run() {
+                if (isDone()) return;
+                try {
+                    callInScope(() -> {
+                        mStart.run();
+                        return null;
+                    });
+                } catch (Exception e) {
+                    // Settled with it through the task's end
+                }
+            }
+
+            void settle(T result, Throwable error) {
+                if (error != null) setException(error);
+                else set(result);
+            }
+        }
+    }
+}
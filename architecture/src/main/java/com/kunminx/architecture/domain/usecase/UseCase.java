@@ -8,32 +8,30 @@ package com.kunminx.architecture.domain.usecase;
  */
 public abstract class UseCase<Q extends UseCase.RequestValues, P extends UseCase.ResponseValue> {
 
-    private Q mRequestValues;
-
-    private UseCaseCallback<P> mUseCaseCallback;
-
-    public Q getRequestValues() {
-        return mRequestValues;
-    }
-
-    public void setRequestValues(Q requestValues) {
-        mRequestValues = requestValues;
-    }
-
-    public UseCaseCallback<P> getUseCaseCallback() {
-        return mUseCaseCallback;
-    }
+    /**
+     * Runs on a worker thread. Report through task, which belongs to this invocation only,
+     * so keep per-request state in locals rather than in fields of the UseCase.
+     * Long running work should check {@link UseCaseTask#isCancelled()} or register
+     * {@link UseCaseTask#onCancel(Runnable)} to release its IO early.
+     * Report before returning, or call {@link UseCaseTask#defer()} first to report from another thread.
+     */
+    protected abstract void executeUseCase(Q requestValues, UseCaseTask<P> task);
 
-    public void setUseCaseCallback(UseCaseCallback<P> useCaseCallback) {
-        mUseCaseCallback = useCaseCallback;
+    /**
+     * Declares how invocations of this UseCase type are retried, none by default.
+     */
+    protected RetryPolicy getRetryPolicy() {
+        return RetryPolicy.NONE;
     }
 
-    void run() {
-        executeUseCase(mRequestValues);
+    /**
+     * @return key of the {@link CircuitBreaker} guarding the endpoint requestValues go to, e.g. its host,
+     * or null for no circuit breaking, the default
+     */
+    protected String getCircuitKey(Q requestValues) {
+        return null;
     }
 
-    protected abstract void executeUseCase(Q requestValues);
-
     /**
      * Data passed to a request.
      */
@@ -51,5 +49,13 @@ public abstract class UseCase<Q extends UseCase.RequestValues, P extends UseCase
 
         default void onError() {
         }
+
+        /**
+         * Typed failure carrying cause and data source. Falls back to {@link #onError()},
+         * so callbacks written against the untyped channel still hear about it.
+         */
+        default void onError(UseCaseException error) {
+            onError();
+        }
     }
 }
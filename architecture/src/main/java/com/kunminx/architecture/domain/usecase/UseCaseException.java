@@ -0,0 +1,25 @@
+package com.kunminx.architecture.domain.usecase;
+
+import com.kunminx.architecture.data.response.ResultSource;
+
+/**
+ * Failure reported through {@link UseCase.UseCaseCallback#onError(UseCaseException)}:
+ * what went wrong, as cause, and which data source it came from.
+ */
+public class UseCaseException extends Exception {
+
+    private final Enum<ResultSource> mSource;
+
+    public UseCaseException(String message, Throwable cause, Enum<ResultSource> source) {
+        super(message, cause);
+        mSource = source;
+    }
+
+    public UseCaseException(Throwable cause, Enum<ResultSource> source) {
+        this(cause == null ? null : cause.getMessage(), cause, source);
+    }
+
+    public Enum<ResultSource> getSource() {
+        return mSource;
+    }
+}
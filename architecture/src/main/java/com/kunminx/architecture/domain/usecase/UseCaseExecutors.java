@@ -0,0 +1,53 @@
+package com.kunminx.architecture.domain.usecase;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Executor backends for {@link StructuredUseCaseScheduler}.
+ */
+public final class UseCaseExecutors {
+
+    private UseCaseExecutors() {
+    }
+
+    /**
+     * A virtual thread per task where the runtime has them (JDK 21+),
+     * otherwise a work-stealing pool, which is what Android gets.
+     * UseCases mostly block on IO, so the pool gets twice as many threads as cores, at least 4.
+     */
+    public static ExecutorService newDefault() {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        return virtual != null ? virtual
+            : newWorkStealingPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    }
+
+    /**
+     * Looked up reflectively so the library still compiles against the Android API.
+     *
+     * @return null when the runtime has no virtual threads
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * FIFO work-stealing pool with daemon threads named usecase-fj-N.
+     */
+    public static ExecutorService newWorkStealingPool(int parallelism) {
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("usecase-fj-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, true);
+    }
+}
@@ -1,5 +1,15 @@
 package com.kunminx.architecture.domain.usecase;
 
+import com.kunminx.architecture.data.response.ResultSource;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Runs {@link UseCase}s using a {@link UseCaseScheduler}.
  */
@@ -20,11 +30,19 @@ public class UseCaseHandler {
         return INSTANCE;
     }
 
-    public <T extends UseCase.RequestValues, R extends UseCase.ResponseValue> void execute(
+    /**
+     * @return handle of this invocation, cancel it or bind it to a page with {@link UseCaseTask#bindTo}
+     */
+    public <T extends UseCase.RequestValues, R extends UseCase.ResponseValue> UseCaseTask<R> execute(
         final UseCase<T, R> useCase, T values, UseCase.UseCaseCallback<R> callback) {
-        useCase.setRequestValues(values);
-        //noinspection unchecked
-        useCase.setUseCaseCallback(new UiCallbackWrapper(callback, this));
+        UseCaseTask<R> task = new UseCaseTask<>(this, callback);
+
+        // Fail fast while the endpoint's circuit is open, without taking a worker
+        String circuitKey = useCase.getCircuitKey(values);
+        if (circuitKey != null && CircuitBreaker.forKey(circuitKey).isOpen()) {
+            task.finish(null, CircuitBreaker.forKey(circuitKey).newOpenException());
+            return task;
+        }
 
         // The network request might be handled in a different thread so make sure
         // Espresso knows
@@ -33,38 +51,143 @@ public class UseCaseHandler {
         // This callback may be called twice, once for the cache and once for loading
         // the data from the server API, so we check before decrementing, otherwise
         // it throws "Counter has been corrupted!" exception.
-        mUseCaseScheduler.execute(useCase::run);
+        mUseCaseScheduler.execute(new UseCaseScheduler.Rejectable() {
+            @Override
+            public void run() {
+                task.run(useCase, values, mUseCaseScheduler);
+            }
+
+            @Override
+            public void reject(RejectedExecutionException e) {
+                task.finish(null, new UseCaseException("UseCase rejected by the scheduler", e, ResultSource.NETWORK));
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Runs useCase once per request value, at most maxConcurrent at a time, and delivers a single
+     * {@link BatchResponse} in one main-thread post once every value has finished, failed ones included.
+     * A value reporting from a subscription holds its concurrency slot, not a worker, until it completes.
+     * Cancelling the returned task cancels the running values and skips the rest.
+     */
+    public <T extends UseCase.RequestValues, R extends UseCase.ResponseValue> UseCaseTask<BatchResponse<R>> executeBatch(
+        final UseCase<T, R> useCase, List<T> values, int maxConcurrent,
+        UseCase.UseCaseCallback<BatchResponse<R>> callback) {
+        UseCaseTask<BatchResponse<R>> task = new UseCaseTask<>(this, callback);
+        new Batch<>(task, useCase, values).start(Math.min(Math.max(1, maxConcurrent), values.size()));
+        return task;
     }
 
-    private <V extends UseCase.ResponseValue> void notifyResponse(final V response,
-                                                                  final UseCase.UseCaseCallback<V> useCaseCallback) {
+    <V extends UseCase.ResponseValue> void notifyResponse(final V response,
+                                                          final UseCase.UseCaseCallback<V> useCaseCallback) {
         mUseCaseScheduler.notifyResponse(response, useCaseCallback);
     }
 
-    private <V extends UseCase.ResponseValue> void notifyError(
-        final UseCase.UseCaseCallback<V> useCaseCallback) {
-        mUseCaseScheduler.onError(useCaseCallback);
+    <V extends UseCase.ResponseValue> void notifyError(final UseCaseException error,
+                                                       final UseCase.UseCaseCallback<V> useCaseCallback) {
+        mUseCaseScheduler.onError(error, useCaseCallback);
     }
 
-    private static final class UiCallbackWrapper<V extends UseCase.ResponseValue> implements
-        UseCase.UseCaseCallback<V> {
-        private final UseCase.UseCaseCallback<V> mCallback;
-        private final UseCaseHandler mUseCaseHandler;
+    private final class Batch<T extends UseCase.RequestValues, R extends UseCase.ResponseValue> {
+        private final UseCaseTask<BatchResponse<R>> mTask;
+        private final UseCase<T, R> mUseCase;
+        private final List<T> mValues;
+        private final Object[] mResponses;
+        private final Throwable[] mErrors;
+        private final AtomicInteger mNext = new AtomicInteger();
+        private final AtomicInteger mRemaining;
+        private final Set<UseCaseTask<R>> mRunning = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+        Batch(UseCaseTask<BatchResponse<R>> task, UseCase<T, R> useCase, List<T> values) {
+            mTask = task;
+            mUseCase = useCase;
+            mValues = values;
+            mResponses = new Object[values.size()];
+            mErrors = new Throwable[values.size()];
+            mRemaining = new AtomicInteger(values.size());
+        }
+
+        void start(int lanes) {
+            if (lanes == 0) {
+                deliver();
+                return;
+            }
+            mTask.onCancel(() -> {
+                for (UseCaseTask<R> item : mRunning) item.cancel();
+            });
+            for (int i = 0; i < lanes; i++) next();
+        }
+
+        /**
+         * Starts the next value, every item that ends starts one more, which caps the concurrency without
+         * holding a worker between items or while an item waits on its subscription.
+         */
+        private void next() {
+            int index;
+            while ((index = mNext.getAndIncrement()) < mValues.size()) {
+                if (!mTask.isCancelled()) {
+                    runItem(index);
+                    return;
+                }
+                settled();
+            }
+        }
+
+        private void runItem(int index) {
+            UseCaseTask<R> item = new UseCaseTask<>(null, new UseCase.UseCaseCallback<R>() {
+                @Override
+                public void onSuccess(R r) {
+                    mResponses[index] = r;
+                }
+
+                @Override
+                public void onError(UseCaseException e) {
+                    mErrors[index] = e;
+                }
+            });
+            mRunning.add(item);
+            item.whenDone(() -> {
+                mRunning.remove(item);
+                if (item.getThrown() != null) mErrors[index] = item.getThrown();
+                else if (mErrors[index] == null && mResponses[index] == null) {
+                    mErrors[index] = new IllegalStateException("Item " + index + " reported no response");
+                }
+                if (mErrors[index] != null) mResponses[index] = null;
+                settled();
+                next();
+            });
+            if (mTask.isCancelled()) item.cancel();
+            mUseCaseScheduler.execute(new UseCaseScheduler.Rejectable() {
+                @Override
+                public void run() {
+                    try {
+                        item.run(mUseCase, mValues.get(index), mUseCaseScheduler);
+                    } catch (RuntimeException e) {
+                        // Recorded as the item's error when it ended
+                    }
+                }
 
-        public UiCallbackWrapper(UseCase.UseCaseCallback<V> callback,
-                                 UseCaseHandler useCaseHandler) {
-            mCallback = callback;
-            mUseCaseHandler = useCaseHandler;
+                @Override
+                public void reject(RejectedExecutionException e) {
+                    item.finish(null, new UseCaseException("UseCase rejected by the scheduler", e, ResultSource.NETWORK));
+                }
+            });
         }
 
-        @Override
-        public void onSuccess(V response) {
-            mUseCaseHandler.notifyResponse(response, mCallback);
+        private void settled() {
+            // The last item out sees every slot, the counter orders their writes before this read
+            if (mRemaining.decrementAndGet() == 0) deliver();
         }
 
-        @Override
-        public void onError() {
-            mUseCaseHandler.notifyError(mCallback);
+        private void deliver() {
+            BatchResponse<R> response = null;
+            if (!mTask.isCancelled()) {
+                //noinspection unchecked
+                List<R> responses = (List<R>) (List<?>) Arrays.asList(mResponses);
+                response = new BatchResponse<>(responses, Arrays.asList(mErrors));
+            }
+            mTask.finish(response, null);
         }
     }
 }
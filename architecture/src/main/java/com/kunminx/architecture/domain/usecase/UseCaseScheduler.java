@@ -1,5 +1,7 @@
 package com.kunminx.architecture.domain.usecase;
 
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * Interface for schedulers, see {@link UseCaseThreadPoolScheduler}.
  */
@@ -10,6 +12,19 @@ public interface UseCaseScheduler {
     <V extends UseCase.ResponseValue> void notifyResponse(final V response,
                                                           final UseCase.UseCaseCallback<V> useCaseCallback);
 
-    <V extends UseCase.ResponseValue> void onError(
-        final UseCase.UseCaseCallback<V> useCaseCallback);
+    <V extends UseCase.ResponseValue> void onError(final UseCaseException error,
+                                                   final UseCase.UseCaseCallback<V> useCaseCallback);
+
+    /**
+     * Queue wait and run time histograms of the tasks this scheduler has executed.
+     */
+    SchedulerStats getStats();
+
+    /**
+     * A runnable standing for a UseCase invocation. A scheduler that can't run it calls {@link #reject} instead,
+     * so the invocation fails through its callback rather than never calling back.
+     */
+    interface Rejectable extends Runnable {
+        void reject(RejectedExecutionException e);
+    }
 }
@@ -0,0 +1,429 @@
+package com.kunminx.architecture.domain.usecase;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.kunminx.architecture.data.response.ResultSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * One invocation of a {@link UseCase}, returned by {@link UseCaseHandler#execute}.
+ * <p>
+ * Holds the callback and cancellation state of that invocation, so a single UseCase instance can run
+ * several requests at once. The UseCase reports through {@link #onSuccess} / {@link #onError(UseCaseException)},
+ * which reach the caller on the main thread unless the task was cancelled in the meantime.
+ * An error reported by an attempt is held back until the UseCase's {@link RetryPolicy} gives up,
+ * and every attempt is accounted to the UseCase's {@link CircuitBreaker}, if it has one.
+ * Retries wait on a timer and then run on a worker again, no worker is held during the backoff.
+ * <p>
+ * A UseCase reporting from another thread, e.g. a subscription, calls {@link #defer()} before executeUseCase returns
+ * and ends the attempt with {@link #complete()} or an error. Its worker is released as soon as executeUseCase returns,
+ * the attempt is settled by whichever thread completes it, so retries, the circuit breaker and batches still see
+ * the real outcome. A report after the invocation ended is logged and dropped.
+ * <p>
+ * {@link #cancel()} interrupts the worker thread and runs the hooks registered with {@link #onCancel(Runnable)},
+ * through which the UseCase releases its IO. {@link #bindTo(LifecycleOwner)} cancels the task with a page.
+ *
+ * @param <P> the response type
+ */
+public final class UseCaseTask<P extends UseCase.ResponseValue> implements UseCase.UseCaseCallback<P> {
+
+    private static final String TAG = "UseCaseTask";
+
+    private final UseCaseHandler mUseCaseHandler;
+    private final UseCase.UseCaseCallback<P> mCallback;
+    private final List<Runnable> mCancelHooks = new ArrayList<>();
+    private Runnable mDoneListener;
+    private UseCaseScheduler mScheduler;
+    private CircuitBreaker mBreaker;
+    private RetryPolicy mRetryPolicy;
+    private Runnable mNextAttempt;
+    private int mAttempts;
+    private Thread mWorker;
+    // executeUseCase is running on mWorker
+    private boolean mInAttempt;
+    // The current attempt has not been settled yet, it outlives executeUseCase when deferred
+    private boolean mAttemptOpen;
+    private boolean mDeferred;
+    private UseCaseException mAttemptError;
+    private RuntimeException mThrown;
+    private boolean mRetryPending;
+    private Disposable mRetry;
+    private volatile boolean mCancelled;
+    private volatile boolean mDone;
+    private volatile Lifecycle mLifecycle;
+    private LifecycleEventObserver mLifecycleObserver;
+
+    /**
+     * @param useCaseHandler posts results to the main thread, or null to deliver them on the reporting thread
+     */
+    UseCaseTask(UseCaseHandler useCaseHandler, UseCase.UseCaseCallback<P> callback) {
+        mUseCaseHandler = useCaseHandler;
+        mCallback = callback;
+    }
+
+    /**
+     * Runs the first attempt on the calling worker, retries are handed to scheduler.
+     * Returns once executeUseCase returned, see {@link #whenDone(Runnable)} for the end of the invocation.
+     *
+     * @throws RuntimeException thrown by executeUseCase, the invocation has ended then
+     */
+    <Q extends UseCase.RequestValues> void run(UseCase<Q, P> useCase, Q requestValues, UseCaseScheduler scheduler) {
+        String circuitKey = useCase.getCircuitKey(requestValues);
+        synchronized (this) {
+            mBreaker = circuitKey == null ? null : CircuitBreaker.forKey(circuitKey);
+            mRetryPolicy = useCase.getRetryPolicy();
+            mScheduler = scheduler;
+            mNextAttempt = () -> attempt(useCase, requestValues);
+        }
+        attempt(useCase, requestValues);
+    }
+
+    private <Q extends UseCase.RequestValues> void attempt(UseCase<Q, P> useCase, Q requestValues) {
+        synchronized (this) {
+            mRetryPending = false;
+            mRetry = null;
+        }
+        if (mCancelled) {
+            end(null);
+            return;
+        }
+        if (mBreaker != null && !mBreaker.tryAcquire()) {
+            end(mBreaker.newOpenException());
+            return;
+        }
+        synchronized (this) {
+            mAttempts++;
+            mAttemptError = null;
+            mAttemptOpen = true;
+            mInAttempt = true;
+            mDeferred = false;
+            mWorker = Thread.currentThread();
+        }
+        RuntimeException thrown = null;
+        try {
+            if (!mCancelled) useCase.executeUseCase(requestValues, this);
+        } catch (RuntimeException e) {
+            thrown = e;
+        }
+        boolean settle;
+        synchronized (this) {
+            mInAttempt = false;
+            mWorker = null;
+            // Don't leak a cancel interrupt into the next task of the pool thread
+            Thread.interrupted();
+            if (thrown != null) mThrown = thrown;
+            settle = !mDeferred || mAttemptError != null || mCancelled || thrown != null;
+        }
+        if (settle) settle();
+        if (thrown != null) throw thrown;
+    }
+
+    /**
+     * Accounts the attempt that just ended, then retries it after the policy's delay or ends the invocation.
+     * Runs once per attempt, on the worker or on the thread that completed a deferred attempt.
+     */
+    private void settle() {
+        UseCaseException error;
+        RuntimeException thrown;
+        int attempts;
+        synchronized (this) {
+            if (!mAttemptOpen) return;
+            mAttemptOpen = false;
+            mDeferred = false;
+            error = mAttemptError;
+            thrown = mThrown;
+            attempts = mAttempts;
+        }
+        boolean cancelled = mCancelled;
+        if (mBreaker != null) {
+            if (cancelled || thrown != null) mBreaker.onAbandoned();
+            else if (error != null) mBreaker.onFailure();
+            else mBreaker.onSuccess();
+        }
+        if (error != null && !cancelled && thrown == null && mRetryPolicy.shouldRetry(attempts, error)) {
+            retryLater(mRetryPolicy.delayMillis(attempts), error);
+        } else {
+            end(thrown == null ? error : null);
+        }
+    }
+
+    private void retryLater(long delayMillis, UseCaseException error) {
+        synchronized (this) {
+            mRetryPending = true;
+        }
+        Disposable retry = Schedulers.computation().scheduleDirect(() -> mScheduler.execute(new UseCaseScheduler.Rejectable() {
+            @Override
+            public void run() {
+                mNextAttempt.run();
+            }
+
+            @Override
+            public void reject(RejectedExecutionException e) {
+                end(error);
+            }
+        }), delayMillis, TimeUnit.MILLISECONDS);
+        synchronized (this) {
+            if (mRetryPending) {
+                mRetry = retry;
+                return;
+            }
+            // Otherwise the retry has started already, or the task was cancelled meanwhile
+            if (!mCancelled) return;
+        }
+        retry.dispose();
+    }
+
+    /**
+     * Ends the invocation once: delivers error, if any, and notifies the done listener.
+     */
+    private void end(UseCaseException error) {
+        Runnable listener;
+        synchronized (this) {
+            if (mDone) return;
+            mDone = true;
+            listener = mDoneListener;
+        }
+        if (error != null) deliverError(error);
+        releaseLifecycle();
+        if (listener != null) listener.run();
+    }
+
+    /**
+     * Declares that this attempt reports after executeUseCase returns, from a subscription or a callback.
+     * It then lasts until {@link #complete()} or {@link #onError(UseCaseException)} is called, or the task is
+     * cancelled; register a hook with {@link #onCancel(Runnable)} that stops the asynchronous work.
+     * The worker is not held meanwhile. Call from executeUseCase.
+     */
+    public synchronized void defer() {
+        if (!mInAttempt) throw new IllegalStateException("defer() must be called from executeUseCase");
+        mDeferred = true;
+    }
+
+    /**
+     * Ends an attempt deferred with {@link #defer()} that succeeded, after its last {@link #onSuccess}.
+     */
+    public void complete() {
+        synchronized (this) {
+            if (!mAttemptOpen || !mDeferred) return;
+            mDeferred = false;
+            // Still inside executeUseCase, the worker settles the attempt when it returns
+            if (mInAttempt) return;
+        }
+        settle();
+    }
+
+    /**
+     * Ends a task not driven through {@link #run}, e.g. refused before it ran or aggregating other tasks.
+     *
+     * @param response delivered first unless null
+     * @param error    delivered unless null
+     */
+    void finish(P response, UseCaseException error) {
+        if (response != null) onSuccess(response);
+        end(error);
+    }
+
+    /**
+     * Runs listener once the invocation has ended, on the thread that ended it, right away if it has already.
+     * Batches and scopes wait on this instead of on a worker.
+     */
+    void whenDone(Runnable listener) {
+        synchronized (this) {
+            if (!mDone) {
+                mDoneListener = listener;
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * @return what executeUseCase threw, or null
+     */
+    synchronized RuntimeException getThrown() {
+        return mThrown;
+    }
+
+    @Override
+    public void onSuccess(P response) {
+        if (mCancelled || mCallback == null || isLate("onSuccess")) return;
+        if (mUseCaseHandler == null) {
+            mCallback.onSuccess(response);
+            return;
+        }
+        mUseCaseHandler.notifyResponse(response, r -> {
+            if (!mCancelled) mCallback.onSuccess(r);
+        });
+    }
+
+    /**
+     * Untyped failure, reported as a {@link UseCaseException} without cause.
+     */
+    @Override
+    public void onError() {
+        onError(new UseCaseException("UseCase reported an error", null, ResultSource.NETWORK));
+    }
+
+    @Override
+    public void onError(UseCaseException error) {
+        boolean settle = false;
+        synchronized (this) {
+            if (mAttemptOpen) {
+                mAttemptError = error;
+                // Still inside executeUseCase, the worker settles the attempt when it returns
+                if (mInAttempt) return;
+                settle = true;
+            }
+        }
+        if (settle) {
+            settle();
+            return;
+        }
+        if (mCancelled || isLate("onError")) return;
+        deliverError(error);
+    }
+
+    /**
+     * A batch or a scope has read the outcome once the invocation ended, so a later report is dropped,
+     * as is one arriving between two attempts. It usually comes from a subscription callback,
+     * where throwing would crash the app instead.
+     */
+    private boolean isLate(String report) {
+        synchronized (this) {
+            if (!mDone && (mScheduler == null || mAttemptOpen)) return false;
+        }
+        Log.w(TAG, report + " after its attempt ended, dropped, call defer() first");
+        return true;
+    }
+
+    private void deliverError(UseCaseException error) {
+        if (mCancelled || mCallback == null) return;
+        if (mUseCaseHandler == null) {
+            mCallback.onError(error);
+            return;
+        }
+        mUseCaseHandler.notifyError(error, new UseCase.UseCaseCallback<P>() {
+            @Override
+            public void onSuccess(P response) {
+            }
+
+            @Override
+            public void onError(UseCaseException e) {
+                if (!mCancelled) mCallback.onError(e);
+            }
+        });
+    }
+
+    /**
+     * Registers a hook run once on cancel, e.g. to close a stream or cancel a call.
+     * Runs right away when the task is already cancelled.
+     */
+    public void onCancel(Runnable hook) {
+        synchronized (this) {
+            if (!mCancelled) {
+                mCancelHooks.add(hook);
+                return;
+            }
+        }
+        hook.run();
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * @return whether the invocation has ended, a deferred attempt only once it completed or failed
+     */
+    public boolean isDone() {
+        return mDone;
+    }
+
+    /**
+     * Stops delivering results, interrupts the worker thread, runs the cancel hooks and ends the invocation,
+     * or lets the worker end it once executeUseCase returns.
+     */
+    public void cancel() {
+        List<Runnable> hooks;
+        Disposable retry;
+        boolean inAttempt;
+        synchronized (this) {
+            if (mCancelled) return;
+            mCancelled = true;
+            if (mWorker != null) mWorker.interrupt();
+            hooks = new ArrayList<>(mCancelHooks);
+            mCancelHooks.clear();
+            retry = mRetry;
+            mRetry = null;
+            mRetryPending = false;
+            inAttempt = mInAttempt;
+        }
+        for (Runnable hook : hooks) hook.run();
+        if (retry != null) retry.dispose();
+        if (!inAttempt) {
+            // Abandons a deferred attempt, or ends a task that is waiting for a retry or hasn't run yet
+            settle();
+            end(null);
+        }
+        releaseLifecycle();
+    }
+
+    /**
+     * Cancels the task when owner stops. Call on the main thread.
+     */
+    public UseCaseTask<P> bindTo(@NonNull LifecycleOwner owner) {
+        return bindTo(owner, Lifecycle.Event.ON_STOP);
+    }
+
+    /**
+     * Cancels the task when owner reaches cancelOn, {@link Lifecycle.Event#ON_STOP} or {@link Lifecycle.Event#ON_DESTROY}.
+     * Call on the main thread.
+     */
+    public UseCaseTask<P> bindTo(@NonNull LifecycleOwner owner, @NonNull Lifecycle.Event cancelOn) {
+        if (mDone || mCancelled || mLifecycle != null) return this;
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            cancel();
+            return this;
+        }
+        mLifecycle = lifecycle;
+        mLifecycleObserver = (source, event) -> {
+            if (event == cancelOn || event == Lifecycle.Event.ON_DESTROY) cancel();
+        };
+        lifecycle.addObserver(mLifecycleObserver);
+        return this;
+    }
+
+    private void releaseLifecycle() {
+        // Only bound tasks touch the main looper, so unbound ones also run off-device
+        if (mLifecycle == null) return;
+        if (Looper.myLooper() == Looper.getMainLooper()) unbind();
+        else MainHandler.INSTANCE.post(this::unbind);
+    }
+
+    private void unbind() {
+        if (mLifecycle != null) {
+            mLifecycle.removeObserver(mLifecycleObserver);
+            mLifecycle = null;
+            mLifecycleObserver = null;
+        }
+    }
+
+    private static final class MainHandler {
+        static final Handler INSTANCE = new Handler(Looper.getMainLooper());
+    }
+}
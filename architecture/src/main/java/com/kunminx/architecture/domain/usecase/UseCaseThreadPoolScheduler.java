@@ -1,38 +1,62 @@
 package com.kunminx.architecture.domain.usecase;
 
 import android.os.Handler;
+import android.os.Looper;
 
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Executes asynchronous tasks using a {@link ThreadPoolExecutor}.
  * <p>
  * See also {@link Executors} for a list of factory methods to create common
  * {@link java.util.concurrent.ExecutorService}s for different scenarios.
+ * <p>
+ * The pool is sized from the CPU count and backed by a bounded queue,
+ * what happens once both the queue and the pool are full is decided by a {@link SaturationPolicy}.
+ * Queue wait and run time of every task are recorded in {@link #getStats()}.
  */
 public class UseCaseThreadPoolScheduler implements UseCaseScheduler {
 
-    public static final int POOL_SIZE = 2;
-    public static final int MAX_POOL_SIZE = 4 * 2;
-    public static final int FIXED_POOL_SIZE = 4;
+    public static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    public static final int POOL_SIZE = Math.max(2, Math.min(CPU_COUNT - 1, 4));
+    public static final int MAX_POOL_SIZE = CPU_COUNT * 2 + 1;
+    public static final int QUEUE_CAPACITY = 128;
     public static final int TIMEOUT = 30;
     final ThreadPoolExecutor mThreadPoolExecutor;
-    private final Handler mHandler = new Handler();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final SchedulerStats mStats = new SchedulerStats();
 
     /**
-     * 固定线程数的无界线程池
+     * 按 CPU 核数配置的有界线程池，饱和时拒绝任务并通过其 onError 回调报告
      */
     public UseCaseThreadPoolScheduler() {
-        mThreadPoolExecutor = new ThreadPoolExecutor(FIXED_POOL_SIZE, FIXED_POOL_SIZE, TIMEOUT,
-            TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        this(POOL_SIZE, MAX_POOL_SIZE, QUEUE_CAPACITY, SaturationPolicy.REJECT);
+    }
+
+    /**
+     * @param queueCapacity tasks waiting beyond the core threads, extra threads up to maxPoolSize
+     *                      are only started once the queue is full
+     */
+    public UseCaseThreadPoolScheduler(int corePoolSize, int maxPoolSize, int queueCapacity,
+                                      SaturationPolicy saturationPolicy) {
+        mThreadPoolExecutor = new ThreadPoolExecutor(corePoolSize, maxPoolSize, TIMEOUT,
+            TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory("usecase-pool"),
+            (runnable, executor) -> {
+                mStats.recordRejected();
+                saturationPolicy.onSaturated(runnable, executor);
+            });
     }
 
     @Override
     public void execute(Runnable runnable) {
-        mThreadPoolExecutor.execute(runnable);
+        mThreadPoolExecutor.execute(mStats.timed(runnable));
     }
 
     @Override
@@ -46,9 +70,92 @@ public class UseCaseThreadPoolScheduler implements UseCaseScheduler {
     }
 
     @Override
-    public <V extends UseCase.ResponseValue> void onError(
-        final UseCase.UseCaseCallback<V> useCaseCallback) {
-        mHandler.post(useCaseCallback::onError);
+    public <V extends UseCase.ResponseValue> void onError(final UseCaseException error,
+                                                          final UseCase.UseCaseCallback<V> useCaseCallback) {
+        mHandler.post(() -> useCaseCallback.onError(error));
+    }
+
+    @Override
+    public SchedulerStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * Fails the UseCase invocation behind runnable, or throws to the submitter when there is none to fail.
+     */
+    static void reject(Runnable runnable, RejectedExecutionException e) {
+        if (runnable instanceof Rejectable) ((Rejectable) runnable).reject(e);
+        else throw e;
+    }
+
+    static RejectedExecutionException newSaturatedException(ThreadPoolExecutor executor) {
+        return new RejectedExecutionException("UseCase rejected, queue of " + executor.getQueue().size()
+            + " and " + executor.getPoolSize() + " threads are saturated");
+    }
+
+    /**
+     * What to do with a task when the queue is full and no more threads may be started.
+     */
+    public interface SaturationPolicy {
+
+        /**
+         * Fails the UseCase right away through its callback's onError, the default.
+         * Plain runnables, which have no callback, get a {@link RejectedExecutionException} thrown to the submitter.
+         */
+        SaturationPolicy REJECT = (runnable, executor) -> reject(runnable, newSaturatedException(executor));
+
+        /**
+         * Runs the task on the submitting thread, which slows the producer down to the pool's pace.
+         * Opt-in only: submitted from the main thread, a blocking UseCase would run there and may cause an ANR.
+         */
+        SaturationPolicy CALLER_RUNS = (runnable, executor) -> {
+            if (!executor.isShutdown()) runnable.run();
+        };
+
+        /**
+         * Drops the longest waiting task to make room for the new one.
+         * The dropped UseCase fails through its callback's onError, only use it for work whose result can be lost, e.g. prefetch.
+         */
+        SaturationPolicy DROP_OLDEST = (runnable, executor) -> {
+            if (executor.isShutdown()) return;
+            Runnable dropped = executor.getQueue().poll();
+            if (dropped instanceof Rejectable) {
+                ((Rejectable) dropped).reject(new RejectedExecutionException("UseCase dropped for a newer one"));
+            }
+            executor.execute(runnable);
+        };
+
+        /**
+         * Throws a {@link RejectedExecutionException} to the submitting thread, as ThreadPoolExecutor does by default.
+         */
+        SaturationPolicy ABORT = (runnable, executor) -> {
+            throw newSaturatedException(executor);
+        };
+
+        /**
+         * Hands the task to onRejected instead of running it, e.g. to fail the UseCase right away.
+         */
+        static SaturationPolicy rejectWithCallback(RejectedExecutionHandler onRejected) {
+            return onRejected::rejectedExecution;
+        }
+
+        void onSaturated(Runnable runnable, ThreadPoolExecutor executor);
+    }
+
+    static final class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+        private final String mPrefix;
+
+        NamedThreadFactory(String prefix) {
+            mPrefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, mPrefix + "-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 
 }
@@ -0,0 +1,134 @@
+package com.kunminx.architecture.utils;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * <pre>
+ *     desc  : mutable bitmaps kept for reuse as BitmapFactory.Options#inBitmap,
+ *             bucketed by allocation size in powers of two
+ * </pre>
+ */
+public final class BitmapPool {
+
+    private static final int BUCKETS = 32;
+
+    private final ArrayDeque<Bitmap>[] mBuckets;
+    private final long mMaxBytes;
+    private long mBytes;
+    private int mHits;
+    private int mMisses;
+
+    /**
+     * @param maxBytes The most bytes the pooled bitmaps may hold, the largest are dropped first.
+     */
+    @SuppressWarnings("unchecked")
+    public BitmapPool(final long maxBytes) {
+        mMaxBytes = maxBytes;
+        mBuckets = new ArrayDeque[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            mBuckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Return a pooled bitmap able to hold width x height in config, taken out of the pool.
+     * Only bitmaps at most one bucket larger are handed out, so a thumbnail never pins a full-screen allocation.
+     *
+     * @return bitmap, or null if none fits
+     */
+    public synchronized Bitmap get(final int width, final int height, final Bitmap.Config config) {
+        long needed = (long) width * height * bytesPerPixel(config);
+        if (needed <= 0 || needed > Integer.MAX_VALUE) {
+            return null;
+        }
+        int bucket = bucketOf((int) needed);
+        for (int b = bucket; b <= Math.min(bucket + 1, BUCKETS - 1); b++) {
+            Iterator<Bitmap> iterator = mBuckets[b].iterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next();
+                if (bitmap.getAllocationByteCount() >= needed) {
+                    iterator.remove();
+                    mBytes -= bitmap.getAllocationByteCount();
+                    mHits++;
+                    return bitmap;
+                }
+            }
+        }
+        mMisses++;
+        return null;
+    }
+
+    /**
+     * Hand a bitmap over for reuse. It must not be drawn anywhere anymore.
+     *
+     * @return whether it was pooled, immutable, hardware and recycled bitmaps are not
+     */
+    public synchronized boolean put(final Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+            return false;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (size > mMaxBytes) {
+            return false;
+        }
+        while (mBytes + size > mMaxBytes) {
+            evictLargest();
+        }
+        mBuckets[bucketOf(size)].addLast(bitmap);
+        mBytes += size;
+        return true;
+    }
+
+    public synchronized void clear() {
+        for (ArrayDeque<Bitmap> bucket : mBuckets) {
+            bucket.clear();
+        }
+        mBytes = 0;
+    }
+
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Return the share of {@link #get} calls answered from the pool.
+     */
+    public synchronized float getHitRate() {
+        int total = mHits + mMisses;
+        return total == 0 ? 0 : (float) mHits / total;
+    }
+
+    private void evictLargest() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            Bitmap bitmap = mBuckets[i].pollFirst();
+            if (bitmap != null) {
+                mBytes -= bitmap.getAllocationByteCount();
+                return;
+            }
+        }
+    }
+
+    private static int bucketOf(final int bytes) {
+        return Math.min(BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(Math.max(1, bytes) - 1));
+    }
+
+    static int bytesPerPixel(final Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && config == Bitmap.Config.RGBA_F16) {
+            return 8;
+        }
+        return 4;
+    }
+}
@@ -2,6 +2,11 @@ package com.kunminx.architecture.utils;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Build;
+
+import java.io.IOException;
 
 /**
  * <pre>
@@ -26,6 +31,212 @@ public final class ImageUtils {
         return BitmapFactory.decodeFile(filePath);
     }
 
+    /**
+     * Return bitmap, sampled down by powers of two while it still covers the size fitting maxWidth x maxHeight.
+     *
+     * @param filePath  The path of file.
+     * @param maxWidth  The maximum width.
+     * @param maxHeight The maximum height.
+     * @return bitmap
+     */
+    public static Bitmap getBitmap(final String filePath, final int maxWidth, final int maxHeight) {
+        return getBitmap(filePath, maxWidth, maxHeight, Bitmap.Config.ARGB_8888, false);
+    }
+
+    /**
+     * Return bitmap, decoded into a pooled bitmap when one fits, see {@link #getBitmapPool()}.
+     * <p>
+     * RGB_565 halves the memory of opaque images, HARDWARE (API 26+) keeps the pixels in GPU memory only,
+     * hardware bitmaps are immutable and never pooled.
+     *
+     * @param filePath  The path of file.
+     * @param maxWidth  The maximum width.
+     * @param maxHeight The maximum height.
+     * @param config    The preferred config.
+     * @param exact     True to scale the sampled bitmap down to fit maxWidth x maxHeight exactly.
+     * @return bitmap
+     */
+    public static Bitmap getBitmap(final String filePath,
+                                   final int maxWidth,
+                                   final int maxHeight,
+                                   final Bitmap.Config config,
+                                   final boolean exact) {
+        int[] size = getSize(filePath);
+        if (size[0] <= 0 || size[1] <= 0) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(size[0], size[1], maxWidth, maxHeight);
+        options.inPreferredConfig = config;
+        int width = ceilDiv(size[0], options.inSampleSize);
+        int height = ceilDiv(size[1], options.inSampleSize);
+        boolean scaled = exact && (width > maxWidth || height > maxHeight);
+        if (scaled) {
+            // Density scaling is applied while decoding, so the full sampled bitmap is never allocated
+            options.inScaled = true;
+            if ((long) width * maxHeight >= (long) height * maxWidth) {
+                options.inDensity = width;
+                options.inTargetDensity = maxWidth;
+                height = (int) Math.ceil((double) height * maxWidth / width);
+                width = maxWidth;
+            } else {
+                options.inDensity = height;
+                options.inTargetDensity = maxHeight;
+                width = (int) Math.ceil((double) width * maxHeight / height);
+                height = maxHeight;
+            }
+        }
+        Bitmap bitmap = decodePooled(options, width, height, opts -> BitmapFactory.decodeFile(filePath, opts));
+        if (bitmap != null && scaled) {
+            bitmap.setDensity(Bitmap.DENSITY_NONE);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Return the region of bitmap, without decoding the rest of the image.
+     *
+     * @param filePath  The path of file.
+     * @param region    The region, in pixels of the full image.
+     * @param maxWidth  The maximum width.
+     * @param maxHeight The maximum height.
+     * @param config    The preferred config, HARDWARE is decoded as ARGB_8888.
+     * @return bitmap
+     */
+    public static Bitmap getBitmapRegion(final String filePath,
+                                         final Rect region,
+                                         final int maxWidth,
+                                         final int maxHeight,
+                                         final Bitmap.Config config) {
+        if (isSpace(filePath) || region == null || region.isEmpty()) {
+            return null;
+        }
+        BitmapRegionDecoder decoder = null;
+        try {
+            //noinspection deprecation
+            decoder = BitmapRegionDecoder.newInstance(filePath, false);
+            Rect bounds = new Rect(region);
+            if (!bounds.intersect(0, 0, decoder.getWidth(), decoder.getHeight())) {
+                return null;
+            }
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = calculateInSampleSize(bounds.width(), bounds.height(), maxWidth, maxHeight);
+            options.inPreferredConfig = isHardware(config) ? Bitmap.Config.ARGB_8888 : config;
+            BitmapRegionDecoder regionDecoder = decoder;
+            return decodePooled(options,
+                ceilDiv(bounds.width(), options.inSampleSize), ceilDiv(bounds.height(), options.inSampleSize),
+                opts -> regionDecoder.decodeRegion(bounds, opts));
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (decoder != null) {
+                decoder.recycle();
+            }
+        }
+    }
+
+    /**
+     * Return the width and height of bitmap, probing the bounds only.
+     *
+     * @param filePath The path of file.
+     * @return size[0]: width, size[1]: height, both -1 if it can't be decoded
+     */
+    public static int[] getSize(final String filePath) {
+        if (isSpace(filePath)) {
+            return new int[]{-1, -1};
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        // decodeFile leaves the options untouched when the file can't be opened
+        options.outWidth = -1;
+        options.outHeight = -1;
+        BitmapFactory.decodeFile(filePath, options);
+        return new int[]{options.outWidth, options.outHeight};
+    }
+
+    /**
+     * Return the pool the decoders of this class reuse bitmaps from, shared app-wide.
+     */
+    public static BitmapPool getBitmapPool() {
+        return PoolHolder.POOL;
+    }
+
+    /**
+     * Hand a bitmap that is no longer drawn back to {@link #getBitmapPool()}.
+     *
+     * @param bitmap The bitmap.
+     */
+    public static void release(final Bitmap bitmap) {
+        PoolHolder.POOL.put(bitmap);
+    }
+
+    private static Bitmap decodePooled(final BitmapFactory.Options options,
+                                       final int width,
+                                       final int height,
+                                       final Decoder decoder) {
+        Bitmap reuse = null;
+        if (!isHardware(options.inPreferredConfig)) {
+            options.inMutable = true;
+            reuse = PoolHolder.POOL.get(width, height, options.inPreferredConfig);
+        }
+        options.inBitmap = reuse;
+        Bitmap bitmap;
+        try {
+            bitmap = decoder.decode(options);
+        } catch (IllegalArgumentException e) {
+            // The estimate was off and the pooled bitmap can't hold the result, decode into a new one
+            if (reuse == null) {
+                throw e;
+            }
+            PoolHolder.POOL.put(reuse);
+            options.inBitmap = null;
+            return decoder.decode(options);
+        }
+        if (bitmap == null && reuse != null) {
+            PoolHolder.POOL.put(reuse);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Return the largest power-of-two sample size that keeps the bitmap at least as large as
+     * it would be fitted into maxWidth x maxHeight, so it is scaled down to the target instead of up.
+     */
+    private static int calculateInSampleSize(final int outWidth,
+                                             final int outHeight,
+                                             final int maxWidth,
+                                             final int maxHeight) {
+        int height = outHeight;
+        int width = outWidth;
+        int inSampleSize = 1;
+        if (maxWidth <= 0 || maxHeight <= 0) {
+            return inSampleSize;
+        }
+        while ((width >> 1) >= maxWidth || (height >> 1) >= maxHeight) {
+            height >>= 1;
+            width >>= 1;
+            inSampleSize <<= 1;
+        }
+        return inSampleSize;
+    }
+
+    private static int ceilDiv(final int value, final int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private static boolean isHardware(final Bitmap.Config config) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && config == Bitmap.Config.HARDWARE;
+    }
+
+    private interface Decoder {
+        Bitmap decode(BitmapFactory.Options options);
+    }
+
+    private static final class PoolHolder {
+        // Reusable bitmaps never hold more than 1/16 of the heap
+        static final BitmapPool POOL = new BitmapPool(Runtime.getRuntime().maxMemory() / 16);
+    }
+
     private static boolean isSpace(final String s) {
         if (s == null) {
             return true;
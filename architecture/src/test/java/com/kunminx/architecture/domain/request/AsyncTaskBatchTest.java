@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.architecture.domain.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.android.plugins.RxAndroidPlugins;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
+
+/**
+ * Windowing, ordering and terminal flush of {@link AsyncTask#batchOnMain(long)},
+ * with a {@link TestScheduler} or a single thread standing in for the main thread.
+ */
+public class AsyncTaskBatchTest {
+
+    private static final long WINDOW_MS = 16;
+
+    private final TestScheduler mMain = new TestScheduler();
+    private final PublishSubject<Integer> mUpstream = PublishSubject.create();
+
+    @Before
+    public void setUp() {
+        useMainThread(mMain);
+    }
+
+    @After
+    public void tearDown() {
+        RxAndroidPlugins.reset();
+    }
+
+    private static void useMainThread(Scheduler main) {
+        RxAndroidPlugins.setInitMainThreadSchedulerHandler(callable -> main);
+        RxAndroidPlugins.setMainThreadSchedulerHandler(scheduler -> main);
+    }
+
+    private TestObserver<List<Integer>> subscribe() {
+        return mUpstream.compose(AsyncTask.<Integer>batchOnMain(WINDOW_MS)).test();
+    }
+
+    @Test
+    public void emissionsWithinOneWindow_areDeliveredAsOneBatchInOrder() {
+        TestObserver<List<Integer>> observer = subscribe();
+
+        mUpstream.onNext(1);
+        mUpstream.onNext(2);
+        mMain.advanceTimeBy(WINDOW_MS - 1, TimeUnit.MILLISECONDS);
+        mUpstream.onNext(3);
+        observer.assertNoValues();
+
+        mMain.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        observer.assertValuesOnly(Arrays.asList(1, 2, 3));
+
+        mUpstream.onNext(4);
+        mMain.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+        observer.assertValuesOnly(Arrays.asList(1, 2, 3), Collections.singletonList(4));
+    }
+
+    @Test
+    public void idleUpstream_postsNothing() {
+        TestObserver<List<Integer>> observer = subscribe();
+
+        mMain.advanceTimeBy(1, TimeUnit.SECONDS);
+        mUpstream.onNext(1);
+        mMain.advanceTimeBy(1, TimeUnit.SECONDS);
+
+        observer.assertValuesOnly(Collections.singletonList(1));
+    }
+
+    @Test
+    public void complete_flushesThePendingBatchWithoutWaitingForTheWindow() {
+        TestObserver<List<Integer>> observer = subscribe();
+
+        mUpstream.onNext(1);
+        mUpstream.onNext(2);
+        mUpstream.onComplete();
+        mMain.triggerActions();
+
+        observer.assertResult(Arrays.asList(1, 2));
+        mMain.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+        observer.assertValueCount(1);
+    }
+
+    @Test
+    public void error_isDeliveredAfterThePendingBatch() {
+        TestObserver<List<Integer>> observer = subscribe();
+        IllegalStateException error = new IllegalStateException("parse failed");
+
+        mUpstream.onNext(1);
+        mUpstream.onError(error);
+        mMain.triggerActions();
+
+        observer.assertFailure(IllegalStateException.class, Collections.singletonList(1));
+    }
+
+    @Test
+    public void dispose_dropsThePendingBatchAndTheUpstream() {
+        TestObserver<List<Integer>> observer = subscribe();
+
+        mUpstream.onNext(1);
+        observer.dispose();
+        mMain.advanceTimeBy(WINDOW_MS, TimeUnit.MILLISECONDS);
+
+        observer.assertNoValues();
+        assertFalse(mUpstream.hasObservers());
+    }
+
+    @Test
+    public void backgroundProducer_isBatchedWithoutLosingOrReorderingItems() throws InterruptedException {
+        ExecutorService main = Executors.newSingleThreadExecutor(r -> new Thread(r, "fake-main"));
+        useMainThread(Schedulers.from(main));
+        int items = 100_000;
+        List<Integer> received = new ArrayList<>(items);
+        try {
+            // Pauses now and then, so the items spread over several windows
+            TestObserver<List<Integer>> observer = Observable.range(0, items)
+                .doOnNext(i -> {
+                    if (i % 1_000 == 0) Thread.sleep(1);
+                })
+                .subscribeOn(Schedulers.io())
+                .compose(AsyncTask.<Integer>batchOnMain(WINDOW_MS))
+                .doOnNext(received::addAll)
+                .test();
+
+            assertTrue("Stream did not finish", observer.await(60, TimeUnit.SECONDS));
+            observer.assertComplete();
+            System.out.printf("batchOnMain: %d items in %d main-thread batches%n", items, observer.valueCount());
+            assertTrue(observer.valueCount() < items);
+            assertEquals(items, received.size());
+            for (int i = 0; i < items; i++) assertEquals(i, (int) received.get(i));
+        } finally {
+            main.shutdownNow();
+        }
+    }
+}
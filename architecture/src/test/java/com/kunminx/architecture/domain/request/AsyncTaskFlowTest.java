@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.architecture.domain.request;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.android.plugins.RxAndroidPlugins;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.DisposableSubscriber;
+import io.reactivex.subscribers.TestSubscriber;
+
+/**
+ * Stress test of {@link AsyncTask#flowIO}: a producer far faster than a slow subscriber,
+ * with a single thread standing in for the main thread, and the demand-paced producer's wait.
+ * Items are counted in flight from the moment the producer hands them over until the subscriber is done with them.
+ */
+public class AsyncTaskFlowTest {
+
+    private static final int ITEMS = 1_000;
+    private static final int ITEM_BYTES = 256 * 1024;
+
+    private static ExecutorService sMain;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sMain = Executors.newSingleThreadExecutor(r -> new Thread(r, "fake-main"));
+        Scheduler main = Schedulers.from(sMain);
+        RxAndroidPlugins.setInitMainThreadSchedulerHandler(callable -> main);
+        RxAndroidPlugins.setMainThreadSchedulerHandler(scheduler -> main);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        RxAndroidPlugins.reset();
+        sMain.shutdownNow();
+    }
+
+    @Test
+    public void buffer_keepsSlowSubscriberBoundedByPrefetch() throws InterruptedException {
+        InFlight inFlight = new InFlight();
+        Flowable<byte[]> flowable = AsyncTask.flowIO(AsyncTask.Backpressure.BUFFER, emitter -> {
+            for (int i = 0; i < ITEMS && !emitter.isCancelled(); i++) {
+                inFlight.produced();
+                emitter.onNext(new byte[ITEM_BYTES]);
+            }
+            emitter.onComplete();
+        });
+
+        int received = consumeSlowly(flowable, inFlight);
+
+        System.out.printf("flowIO BUFFER: %d items of %d KB, peak in flight %d items, %d MB%n",
+            received, ITEM_BYTES / 1024, inFlight.mPeak.get(), inFlight.mPeak.get() * ITEM_BYTES / (1024 * 1024));
+        assertEquals(ITEMS, received);
+        // observeOn requests its prefetch up front, the producer may be one item ahead of it
+        assertTrue("Peak " + inFlight.mPeak.get(), inFlight.mPeak.get() <= Flowable.bufferSize() + 1);
+    }
+
+    @Test
+    public void buffer_producerSleepsUntilRequestedOrCancelled() throws InterruptedException {
+        AtomicReference<Thread> producer = new AtomicReference<>();
+        AtomicInteger produced = new AtomicInteger();
+        CountDownLatch stopped = new CountDownLatch(1);
+        Flowable<Integer> flowable = AsyncTask.flowIO(AsyncTask.Backpressure.BUFFER, emitter -> {
+            producer.set(Thread.currentThread());
+            while (!emitter.isCancelled()) emitter.onNext(produced.incrementAndGet());
+            stopped.countDown();
+        });
+
+        // observeOn prefetches on its own, the producer stops once that is used up
+        TestSubscriber<Integer> subscriber = flowable.test(0);
+        awaitWaiting(producer);
+        int prefetched = produced.get();
+        assertTrue("Produced " + prefetched, prefetched <= Flowable.bufferSize() + 1);
+
+        // Untimed wait: no polling while there is no demand
+        assertEquals(Thread.State.WAITING, producer.get().getState());
+
+        // Each request wakes it for as much as is asked
+        subscriber.request(Flowable.bufferSize());
+        subscriber.awaitCount(Flowable.bufferSize());
+        subscriber.assertValueCount(Flowable.bufferSize());
+        awaitWaiting(producer);
+        assertTrue(produced.get() > prefetched);
+
+        subscriber.cancel();
+        assertTrue("Producer still waiting after cancel", stopped.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void latest_dropsWhatTheSubscriberCannotKeepUpWith() throws InterruptedException {
+        InFlight inFlight = new InFlight();
+        Flowable<byte[]> flowable = AsyncTask.flowIO(AsyncTask.Backpressure.LATEST, emitter -> {
+            for (int i = 0; i < ITEMS && !emitter.isCancelled(); i++) {
+                inFlight.produced();
+                emitter.onNext(new byte[ITEM_BYTES]);
+            }
+            emitter.onComplete();
+        });
+
+        int received = consumeSlowly(flowable, inFlight);
+
+        System.out.printf("flowIO LATEST: %d of %d items delivered%n", received, ITEMS);
+        assertTrue(received > 0);
+        assertTrue(received < ITEMS);
+    }
+
+    /**
+     * Requests one item at a time and spends a millisecond on each, far slower than the producer.
+     *
+     * @return items received
+     */
+    private static int consumeSlowly(Flowable<byte[]> flowable, InFlight inFlight) throws InterruptedException {
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        flowable.subscribe(new DisposableSubscriber<byte[]>() {
+            @Override
+            protected void onStart() {
+                request(1);
+            }
+
+            @Override
+            public void onNext(byte[] bytes) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.incrementAndGet();
+                inFlight.consumed();
+                request(1);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+        assertTrue("Stream did not finish", done.await(60, TimeUnit.SECONDS));
+        return received.get();
+    }
+
+    private static void awaitWaiting(AtomicReference<Thread> producer) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (producer.get() == null || producer.get().getState() != Thread.State.WAITING) {
+            assertTrue("Producer never waited for demand", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static final class InFlight {
+        final AtomicLong mCount = new AtomicLong();
+        final AtomicLong mPeak = new AtomicLong();
+
+        void produced() {
+            long count = mCount.incrementAndGet();
+            long peak;
+            while ((peak = mPeak.get()) < count && !mPeak.compareAndSet(peak, count)) ;
+        }
+
+        void consumed() {
+            mCount.decrementAndGet();
+        }
+    }
+}
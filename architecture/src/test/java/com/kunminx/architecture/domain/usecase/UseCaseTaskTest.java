@@ -0,0 +1,384 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.architecture.domain.usecase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.kunminx.architecture.data.response.ResultSource;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Runs UseCases reporting from a subscription, see {@link UseCaseTask#defer()}, on the JVM.
+ */
+public class UseCaseTaskTest {
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final UseCaseHandler mHandler = new UseCaseHandler(
+        new StructuredUseCaseScheduler(mExecutor, MainThreadDispatcher.IMMEDIATE));
+    // A single worker, which a UseCase holding on to it would starve
+    private final ExecutorService mSingleWorker = Executors.newSingleThreadExecutor();
+    private final StructuredUseCaseScheduler mSingleWorkerScheduler =
+        new StructuredUseCaseScheduler(mSingleWorker, MainThreadDispatcher.IMMEDIATE);
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+        mSingleWorker.shutdownNow();
+    }
+
+    @Test
+    public void deferred_lastsUntilComplete() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder recorder = new Recorder();
+
+        UseCaseTask<Value> task = mHandler.execute(new SubscribingUseCase(release, null), new Request(), recorder);
+
+        assertTrue(recorder.awaitValues(3));
+        assertFalse(task.isDone());
+        release.countDown();
+        assertTrue(awaitDone(task));
+        assertEquals(4, recorder.mValues.size());
+        assertEquals(3, recorder.mValues.get(3).mProgress);
+        assertNull(recorder.mError.get());
+    }
+
+    @Test
+    public void deferred_errorIsRetriedPerPolicy() throws InterruptedException {
+        SubscribingUseCase useCase = new SubscribingUseCase(null, new IOException("reset"));
+        useCase.mRetryPolicy = new RetryPolicy(3, 1, 1, 0, RetryPolicy.Condition.IO);
+        Recorder recorder = new Recorder();
+
+        UseCaseTask<Value> task = mHandler.execute(useCase, new Request(), recorder);
+
+        assertTrue(awaitDone(task));
+        assertTrue(recorder.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals(3, useCase.mAttempts.get());
+        assertTrue(recorder.mError.get().getCause() instanceof IOException);
+    }
+
+    @Test
+    public void cancel_disposesTheSubscriptionAndFreesTheWorker() throws InterruptedException {
+        CountDownLatch never = new CountDownLatch(1);
+        SubscribingUseCase useCase = new SubscribingUseCase(never, null);
+        Recorder recorder = new Recorder();
+
+        UseCaseTask<Value> task = mHandler.execute(useCase, new Request(), recorder);
+        assertTrue(recorder.awaitValues(3));
+        task.cancel();
+
+        assertTrue(awaitDone(task));
+        assertTrue(useCase.mDisposed.get());
+        assertNull(recorder.mError.get());
+    }
+
+    @Test
+    public void deferred_releasesTheWorker() throws InterruptedException {
+        UseCaseHandler handler = new UseCaseHandler(mSingleWorkerScheduler);
+        Recorder pending = new Recorder();
+        Recorder next = new Recorder();
+
+        UseCaseTask<Value> task = handler.execute(new SubscribingUseCase(new CountDownLatch(1), null), new Request(), pending);
+        assertTrue(pending.awaitValues(3));
+        handler.execute(new ReportingUseCase(), new Request(), next);
+
+        assertTrue(next.awaitValues(1));
+        assertFalse(task.isDone());
+        task.cancel();
+    }
+
+    @Test
+    public void retryBackoff_releasesTheWorker() throws InterruptedException {
+        UseCaseHandler handler = new UseCaseHandler(mSingleWorkerScheduler);
+        AtomicInteger attempts = new AtomicInteger();
+        UseCase<Request, Value> failing = new UseCase<Request, Value>() {
+            @Override
+            protected void executeUseCase(Request requestValues, UseCaseTask<Value> task) {
+                attempts.incrementAndGet();
+                task.onError(new UseCaseException(new IOException("reset"), ResultSource.NETWORK));
+            }
+
+            @Override
+            protected RetryPolicy getRetryPolicy() {
+                return new RetryPolicy(2, 500, 500, 0, RetryPolicy.Condition.IO);
+            }
+        };
+        Recorder failed = new Recorder();
+        Recorder next = new Recorder();
+
+        UseCaseTask<Value> task = handler.execute(failing, new Request(), failed);
+        handler.execute(new ReportingUseCase(), new Request(), next);
+
+        assertTrue(next.awaitValues(1));
+        assertEquals(1, attempts.get());
+        assertFalse(task.isDone());
+        assertTrue(failed.mDone.await(5, TimeUnit.SECONDS));
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void cancel_duringRetryBackoff_endsTheTask() throws InterruptedException {
+        SubscribingUseCase useCase = new SubscribingUseCase(null, new IOException("reset"));
+        useCase.mRetryPolicy = new RetryPolicy(3, 60_000, 60_000, 0, RetryPolicy.Condition.IO);
+        Recorder recorder = new Recorder();
+
+        UseCaseTask<Value> task = mHandler.execute(useCase, new Request(), recorder);
+        assertTrue(recorder.awaitValues(3));
+        Thread.sleep(50);
+        task.cancel();
+
+        assertTrue(awaitDone(task));
+        assertEquals(1, useCase.mAttempts.get());
+        assertNull(recorder.mError.get());
+    }
+
+    @Test
+    public void batch_deferredItemsShareOneWorker() throws InterruptedException {
+        UseCaseHandler handler = new UseCaseHandler(mSingleWorkerScheduler);
+        CountDownLatch delivered = new CountDownLatch(1);
+        AtomicReference<BatchResponse<Value>> batch = new AtomicReference<>();
+
+        // Each item completes only once all three have started, which a parked worker would never allow
+        handler.executeBatch(new RendezvousUseCase(3), Collections.nCopies(3, new Request()), 3, response -> {
+            batch.set(response);
+            delivered.countDown();
+        });
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(0, batch.get().getFailedCount());
+    }
+
+    @Test
+    public void fork_deferredChildrenShareOneWorker() throws Exception {
+        RendezvousUseCase useCase = new RendezvousUseCase(2);
+        Future<Value> first;
+        Future<Value> second;
+
+        try (StructuredUseCaseScheduler.Scope scope = mSingleWorkerScheduler.openScope(5, TimeUnit.SECONDS)) {
+            first = scope.fork(useCase, new Request());
+            second = scope.fork(useCase, new Request());
+            scope.join();
+        }
+
+        assertEquals(1, first.get().mProgress);
+        assertEquals(1, second.get().mProgress);
+    }
+
+    @Test
+    public void batch_waitsForDeferredItems() throws InterruptedException {
+        CountDownLatch released = new CountDownLatch(0);
+        CountDownLatch delivered = new CountDownLatch(1);
+        AtomicReference<BatchResponse<Value>> batch = new AtomicReference<>();
+
+        mHandler.executeBatch(new SubscribingUseCase(released, null), Collections.nCopies(6, new Request()), 2,
+            response -> {
+                batch.set(response);
+                delivered.countDown();
+            });
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(0, batch.get().getFailedCount());
+        for (Value value : batch.get().getResponses()) assertEquals(3, value.mProgress);
+    }
+
+    @Test
+    public void fork_waitsForDeferredUseCase() throws Exception {
+        StructuredUseCaseScheduler scheduler = new StructuredUseCaseScheduler(mExecutor, MainThreadDispatcher.IMMEDIATE);
+        Future<Value> value;
+
+        try (StructuredUseCaseScheduler.Scope scope = scheduler.openScope(5, TimeUnit.SECONDS)) {
+            value = scope.fork(new SubscribingUseCase(new CountDownLatch(0), null), new Request());
+            scope.join();
+        }
+
+        assertEquals(3, value.get().mProgress);
+    }
+
+    @Test
+    public void lateReport_withoutDefer_isDroppedOnTheReportingThread() throws InterruptedException {
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        CountDownLatch reported = new CountDownLatch(1);
+        Recorder recorder = new Recorder();
+        UseCase<Request, Value> useCase = new UseCase<Request, Value>() {
+            @Override
+            protected void executeUseCase(Request requestValues, UseCaseTask<Value> task) {
+                new Thread(() -> {
+                    try {
+                        awaitDone(task);
+                        task.onSuccess(new Value(0));
+                        task.onError(new UseCaseException(new IOException("late"), ResultSource.NETWORK));
+                    } catch (Throwable e) {
+                        thrown.set(e);
+                    }
+                    reported.countDown();
+                }).start();
+            }
+        };
+
+        mHandler.execute(useCase, new Request(), recorder);
+
+        assertTrue(reported.await(5, TimeUnit.SECONDS));
+        assertNull(thrown.get());
+        assertTrue(recorder.mValues.isEmpty());
+        assertNull(recorder.mError.get());
+    }
+
+    static boolean awaitDone(UseCaseTask<?> task) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!task.isDone() && System.nanoTime() < deadline) Thread.sleep(5);
+        return task.isDone();
+    }
+
+    static final class Request implements UseCase.RequestValues {
+    }
+
+    static final class Value implements UseCase.ResponseValue {
+        final int mProgress;
+
+        Value(int progress) {
+            mProgress = progress;
+        }
+    }
+
+    /**
+     * Reports three values from an io thread, then a fourth and completes once release opens, or fails with error.
+     */
+    static final class SubscribingUseCase extends UseCase<Request, Value> {
+        final AtomicInteger mAttempts = new AtomicInteger();
+        final AtomicBoolean mDisposed = new AtomicBoolean();
+        private final CountDownLatch mRelease;
+        private final Throwable mError;
+        RetryPolicy mRetryPolicy = RetryPolicy.NONE;
+
+        SubscribingUseCase(CountDownLatch release, Throwable error) {
+            mRelease = release;
+            mError = error;
+        }
+
+        @Override
+        protected void executeUseCase(Request requestValues, UseCaseTask<Value> task) {
+            mAttempts.incrementAndGet();
+            task.defer();
+            Disposable disposable = Observable.<Integer>create(emitter -> {
+                    for (int i = 0; i < 3; i++) emitter.onNext(i);
+                    if (mError != null) {
+                        emitter.onError(mError);
+                        return;
+                    }
+                    try {
+                        mRelease.await();
+                    } catch (InterruptedException e) {
+                        // Disposed
+                        return;
+                    }
+                    emitter.onNext(3);
+                    emitter.onComplete();
+                })
+                .subscribeOn(Schedulers.io())
+                .doOnDispose(() -> mDisposed.set(true))
+                .subscribe(
+                    progress -> task.onSuccess(new Value(progress)),
+                    e -> task.onError(new UseCaseException(e, ResultSource.NETWORK)),
+                    task::complete);
+            task.onCancel(disposable::dispose);
+        }
+
+        @Override
+        protected RetryPolicy getRetryPolicy() {
+            return mRetryPolicy;
+        }
+    }
+
+    /**
+     * Reports one value before returning.
+     */
+    static final class ReportingUseCase extends UseCase<Request, Value> {
+        @Override
+        protected void executeUseCase(Request requestValues, UseCaseTask<Value> task) {
+            task.onSuccess(new Value(7));
+        }
+    }
+
+    /**
+     * Defers, then completes from an io thread once the given number of invocations have started.
+     */
+    static final class RendezvousUseCase extends UseCase<Request, Value> {
+        private final CountDownLatch mStarted;
+
+        RendezvousUseCase(int parties) {
+            mStarted = new CountDownLatch(parties);
+        }
+
+        @Override
+        protected void executeUseCase(Request requestValues, UseCaseTask<Value> task) {
+            task.defer();
+            mStarted.countDown();
+            Disposable disposable = Completable.fromAction(mStarted::await)
+                .subscribeOn(Schedulers.io())
+                .subscribe(() -> {
+                    task.onSuccess(new Value(1));
+                    task.complete();
+                }, e -> task.onError(new UseCaseException(e, ResultSource.NETWORK)));
+            task.onCancel(disposable::dispose);
+        }
+    }
+
+    static final class Recorder implements UseCase.UseCaseCallback<Value> {
+        final List<Value> mValues = new CopyOnWriteArrayList<>();
+        final AtomicReference<UseCaseException> mError = new AtomicReference<>();
+        final CountDownLatch mDone = new CountDownLatch(1);
+
+        @Override
+        public void onSuccess(Value response) {
+            mValues.add(response);
+        }
+
+        @Override
+        public void onError(UseCaseException error) {
+            mError.set(error);
+            mDone.countDown();
+        }
+
+        boolean awaitValues(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (mValues.size() < count && System.nanoTime() < deadline) Thread.sleep(5);
+            return mValues.size() >= count;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018-present KunMinX
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kunminx.architecture.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Shader;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Decodes sample covers with the real Skia decoders, Robolectric's native graphics mode,
+ * and compares the full-size decode with the sampled, exact and pooled ones in memory and latency.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(sdk = 33)
+public class ImageUtilsTest {
+
+    private static final int COVERS = 8;
+    private static final int COVER_SIZE = 1600;
+    private static final int TARGET_SIZE = 256;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<String> mCovers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        ImageUtils.getBitmapPool().clear();
+        Random random = new Random(42);
+        for (int i = 0; i < COVERS; i++) {
+            mCovers.add(writeCover(mFolder.newFile("cover" + i + ".jpg"), COVER_SIZE, COVER_SIZE, random));
+        }
+    }
+
+    @Test
+    public void getSize_probesBoundsOnly() {
+        int[] size = ImageUtils.getSize(mCovers.get(0));
+
+        assertEquals(COVER_SIZE, size[0]);
+        assertEquals(COVER_SIZE, size[1]);
+        assertEquals(-1, ImageUtils.getSize(new File(mFolder.getRoot(), "missing.jpg").getPath())[0]);
+    }
+
+    @Test
+    public void getBitmap_samplesByPowersOfTwoAndScalesExactly() throws IOException {
+        String cover = writeCover(mFolder.newFile("wide.jpg"), 1200, 800, new Random(1));
+
+        Bitmap sampled = ImageUtils.getBitmap(cover, 256, 256);
+        Bitmap exact = ImageUtils.getBitmap(cover, 256, 256, Bitmap.Config.ARGB_8888, true);
+        Bitmap rgb565 = ImageUtils.getBitmap(cover, 256, 256, Bitmap.Config.RGB_565, true);
+
+        // Fitted into 256 x 256 it would be 256 x 171: / 4 still covers that, / 8 would not
+        assertEquals(300, sampled.getWidth());
+        assertEquals(200, sampled.getHeight());
+        assertEquals(256, exact.getWidth());
+        assertEquals(171, exact.getHeight());
+        assertEquals(Bitmap.Config.RGB_565, rgb565.getConfig());
+        assertEquals(exact.getAllocationByteCount() / 2, rgb565.getAllocationByteCount());
+    }
+
+    /**
+     * Robolectric has no native region decoder, its stand-in ignores the sample size, so only the bounds are checked.
+     */
+    @Test
+    public void getBitmapRegion_clipsTheRegionToTheImage() {
+        Bitmap region = ImageUtils.getBitmapRegion(mCovers.get(0), new Rect(1200, 1400, 2000, 2000),
+            COVER_SIZE, COVER_SIZE, Bitmap.Config.ARGB_8888);
+
+        assertNotNull(region);
+        assertEquals(400, region.getWidth());
+        assertEquals(200, region.getHeight());
+        assertNull(ImageUtils.getBitmapRegion(mCovers.get(0), new Rect(1600, 0, 1800, 200),
+            COVER_SIZE, COVER_SIZE, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void getBitmap_reusesReleasedBitmap() {
+        Bitmap first = ImageUtils.getBitmap(mCovers.get(0), TARGET_SIZE, TARGET_SIZE, Bitmap.Config.ARGB_8888, true);
+        ImageUtils.release(first);
+
+        Bitmap second = ImageUtils.getBitmap(mCovers.get(1), TARGET_SIZE, TARGET_SIZE, Bitmap.Config.ARGB_8888, true);
+
+        assertSame(first, second);
+        assertEquals(TARGET_SIZE, second.getWidth());
+        assertEquals(0, ImageUtils.getBitmapPool().getBytes());
+    }
+
+    /**
+     * Holds every decoded cover, as a cover grid would, and reports the pixel bytes held at the peak.
+     * Asserts the bytes held, the timings are printed for comparison across changes.
+     */
+    @Test
+    public void benchmark_fullSizeAgainstSampledAndPooled() {
+        for (String cover : mCovers) ImageUtils.getBitmap(cover);
+
+        Result full = run(cover -> ImageUtils.getBitmap(cover), false);
+        Result sampled = run(cover -> ImageUtils.getBitmap(cover, TARGET_SIZE, TARGET_SIZE), false);
+        Result exact = run(cover -> ImageUtils.getBitmap(cover, TARGET_SIZE, TARGET_SIZE,
+            Bitmap.Config.ARGB_8888, true), false);
+        Result rgb565 = run(cover -> ImageUtils.getBitmap(cover, TARGET_SIZE, TARGET_SIZE,
+            Bitmap.Config.RGB_565, true), false);
+        Result pooled = run(cover -> ImageUtils.getBitmap(cover, TARGET_SIZE, TARGET_SIZE,
+            Bitmap.Config.ARGB_8888, true), true);
+
+        System.out.printf("%d covers of %dpx decoded for %dpx: full size %s, sampled %s, exact %s, "
+                + "exact RGB_565 %s, exact pooled %s, pool hit rate %.0f%%%n", COVERS, COVER_SIZE, TARGET_SIZE,
+            full, sampled, exact, rgb565, pooled, ImageUtils.getBitmapPool().getHitRate() * 100);
+
+        // 1600px covers are sampled by 4 to 400px
+        assertEquals(full.mPeakBytes / 16, sampled.mPeakBytes);
+        assertTrue(exact.mPeakBytes < sampled.mPeakBytes);
+        assertEquals(exact.mPeakBytes / 2, rgb565.mPeakBytes);
+        // Each cover is released before the next one is decoded, so one bitmap serves them all
+        assertEquals(exact.mPeakBytes / COVERS, pooled.mPeakBytes);
+    }
+
+    /**
+     * @param release true to release each cover to the pool before decoding the next, as a single view would
+     */
+    private Result run(Decode decode, boolean release) {
+        int rounds = 5;
+        long nanos = 0, peak = 0;
+        for (int r = 0; r < rounds; r++) {
+            List<Bitmap> held = new ArrayList<>();
+            long bytes = 0;
+            long start = System.nanoTime();
+            for (String cover : mCovers) {
+                Bitmap bitmap = decode.decode(cover);
+                if (release) {
+                    bytes = Math.max(bytes, bitmap.getAllocationByteCount());
+                    ImageUtils.release(bitmap);
+                } else {
+                    held.add(bitmap);
+                    bytes += bitmap.getAllocationByteCount();
+                }
+            }
+            nanos += System.nanoTime() - start;
+            peak = Math.max(peak, bytes);
+        }
+        ImageUtils.getBitmapPool().clear();
+        return new Result(nanos / rounds / COVERS, peak);
+    }
+
+    /**
+     * A gradient with noise on top, so the JPEG is about as large as a photo cover.
+     */
+    private static String writeCover(File file, int width, int height, Random random) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        paint.setShader(new LinearGradient(0, 0, width, height,
+            0xFF000000 | random.nextInt(), 0xFF000000 | random.nextInt(), Shader.TileMode.CLAMP));
+        canvas.drawRect(0, 0, width, height, paint);
+        paint.setShader(null);
+        for (int i = 0; i < 2_000; i++) {
+            paint.setColor(0x40000000 | random.nextInt(0xFFFFFF));
+            float x = random.nextInt(width), y = random.nextInt(height);
+            canvas.drawCircle(x, y, 4 + random.nextInt(40), paint);
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 90, out);
+        }
+        bitmap.recycle();
+        return file.getPath();
+    }
+
+    private interface Decode {
+        Bitmap decode(String cover);
+    }
+
+    private static final class Result {
+        final long mNanos;
+        final long mPeakBytes;
+
+        Result(long nanos, long peakBytes) {
+            mNanos = nanos;
+            mPeakBytes = peakBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.2f ms %d KB", mNanos / 1e6, mPeakBytes / 1024);
+        }
+    }
+}